@@ -9,6 +9,7 @@ plugins {
     id("java")
     application
     id("com.palantir.git-version") version "3.0.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 
@@ -34,6 +35,9 @@ dependencies {
     implementation("com.google.code.gson:gson:2.11.0")
     implementation("org.apache.logging.log4j:log4j-api:2.20.0")
     implementation("org.apache.logging.log4j:log4j-core:2.20.0")
+    // JGit logs through slf4j
+    implementation("org.apache.logging.log4j:log4j-slf4j2-impl:2.20.0")
+    implementation("org.eclipse.jgit:org.eclipse.jgit:7.2.1.202505142326-r")
     implementation("commons-io:commons-io:2.18.0")
     implementation("info.picocli:picocli:4.7.6")
     annotationProcessor("info.picocli:picocli-codegen:4.7.6")
@@ -43,6 +47,9 @@ dependencies {
 
     testCompileOnly("org.projectlombok:lombok:1.18.36")
     testAnnotationProcessor("org.projectlombok:lombok:1.18.36")
+
+    jmhCompileOnly("org.projectlombok:lombok:1.18.36")
+    jmhAnnotationProcessor("org.projectlombok:lombok:1.18.36")
 }
 
 // Apply a specific Java toolchain to ease working on different environments.
@@ -75,12 +82,41 @@ tasks.named<Test>("test") {
     environment("VERSION", "1.0.0")
 }
 
+// ./gradlew jmh, results in build/results/jmh/results.json
+// -Pjmh.includes=<regex> runs only matching benchmarks, -Pjmh.fixtures=<dir|bundled> uses recorded gtnh-assets.json and daily.json
+jmh {
+    jmhVersion = "1.37"
+    // fixed so results of different runs and commits compare
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    benchmarkMode = listOf("avgt")
+    timeUnit = "ms"
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    (findProperty("jmh.includes") as String?)?.let { includes = listOf(it) }
+    (findProperty("jmh.fixtures") as String?)?.let {
+        val fixtures = if (it == "bundled") it else file(it).absolutePath
+        jvmArgsAppend = listOf("-Dgtnh.fixtures=$fixtures")
+    }
+}
+
+// ./gradlew mockUpstream -Pmock.args="<port> <latency ms> <bytes per second> <mods>", a local GitHub and nexus to load test against
+tasks.register<JavaExec>("mockUpstream") {
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass = "GTNHNightlyUpdater.MockUpstream"
+    args = (findProperty("mock.args") as String? ?: "").split(" ").filter { it.isNotEmpty() }
+}
+
 tasks {
-    withType<Jar> {
+    // not jmhJar, which has its own main class
+    named<Jar>("jar") {
         manifest {
             attributes["Main-Class"] = application.mainClass
         }
         duplicatesStrategy = DuplicatesStrategy.EXCLUDE
+        // signatures of signed dependencies like JGit don't match the merged jar
+        exclude("META-INF/*.SF", "META-INF/*.RSA", "META-INF/*.DSA")
         // here zip stuff found in runtimeClasspath:
         from(configurations.runtimeClasspath.get().map { if (it.isDirectory) it else zipTree(it) })
     }
@@ -0,0 +1,61 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Models.Manifest;
+import GTNHNightlyUpdater.Models.Snapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Resolving the assets: parsing the manifest, then streaming gtnh-assets.json while applying it.
+ */
+@State(Scope.Benchmark)
+public class AssetsBenchmark {
+    // gtnh-assets.json lists about 900 mods with years of versions each
+    @Param({"900"})
+    int mods;
+    @Param({"10", "60"})
+    int versions;
+
+    private String assetsJson;
+    private String manifestJson;
+    private Manifest manifest;
+    private String snapshotJson;
+
+    @Setup
+    public void setup() throws IOException {
+        assetsJson = Fixtures.assetsJson(mods, versions);
+        manifestJson = Fixtures.manifestJson(mods, versions);
+        manifest = JsonParser.parse(manifestJson, Manifest.class);
+        snapshotJson = JsonParser.toJson(Snapshot.of("DAILY", AssetsParser.parse(new StringReader(assetsJson), manifest)));
+    }
+
+    @Benchmark
+    public Manifest parseManifest() {
+        return JsonParser.parse(manifestJson, Manifest.class);
+    }
+
+    @Benchmark
+    public Assets.Asset parseAssets() throws IOException {
+        return AssetsParser.parse(new StringReader(assetsJson), manifest);
+    }
+
+    /**
+     * What fetchDAXXLAssets does once both files are cached.
+     */
+    @Benchmark
+    public Assets.Asset resolve() throws IOException {
+        return AssetsParser.parse(new StringReader(assetsJson), JsonParser.parse(manifestJson, Manifest.class));
+    }
+
+    @Benchmark
+    public Assets.Asset readSnapshot() {
+        return JsonParser.parse(snapshotJson, Snapshot.class).toAsset();
+    }
+}
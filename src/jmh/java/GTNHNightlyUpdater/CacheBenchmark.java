@@ -0,0 +1,68 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.TreeMap;
+
+/**
+ * Deciding what to remove from the mod cache. Runs dry, so every invocation sees the same cache.
+ */
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+    @Param({"400", "2000", "10000"})
+    int files;
+
+    private Path cacheDir;
+    private CacheManager cacheManager;
+
+    @Setup
+    public void setup() throws IOException {
+        cacheDir = Files.createTempDirectory("cache-benchmark");
+        val modCacheDir = cacheDir.resolve("mods");
+        val assets = Fixtures.assets(files, 1, modCacheDir);
+
+        // a year of nightlies, one instance using half the cache
+        val now = System.currentTimeMillis();
+        val instanceMods = new TreeMap<String, Path>();
+        int i = 0;
+        for (val mod : assets.getMods()) {
+            val version = mod.getLatest();
+            if (version == null) {
+                continue;
+            }
+            val path = version.getCachePath();
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[1024]);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(now - Duration.ofDays(i++ % 365).toMillis()));
+            if (i % 2 == 0) {
+                instanceMods.put(path.getFileName().toString(), cacheDir.resolve("instance").resolve("mods").resolve(path.getFileName().toString()));
+            }
+        }
+        Fixtures.createFiles(instanceMods);
+
+        cacheManager = new CacheManager(cacheDir, new CacheManager.Policy(files * 1024L * 3 / 4, Duration.ofDays(30)));
+        cacheManager.registerInstance(cacheDir.resolve("instance"), false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @Benchmark
+    public CacheManager.Result collect() throws IOException {
+        return cacheManager.collect(true);
+    }
+}
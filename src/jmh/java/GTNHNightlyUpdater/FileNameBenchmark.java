@@ -0,0 +1,50 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Utils.NameSanitizer;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The regular expressions every cached file name goes through.
+ */
+@State(Scope.Benchmark)
+public class FileNameBenchmark {
+    private List<String> fileNames;
+    private Assets.Asset assets;
+    private Path modCacheDir;
+
+    @Setup
+    public void setup() {
+        fileNames = Fixtures.fileNames(2000);
+        modCacheDir = Path.of("cache", "mods");
+        assets = Fixtures.assets(900, 10, modCacheDir);
+    }
+
+    @Benchmark
+    public void sanitizeFileNames(Blackhole blackhole) {
+        for (val fileName : fileNames) {
+            blackhole.consume(NameSanitizer.sanitizeFileNameWithExtension(fileName, ""));
+        }
+    }
+
+    /**
+     * What caching the mods does for each of them before looking at the disk.
+     */
+    @Benchmark
+    public void cachePaths(Blackhole blackhole) {
+        for (val mod : assets.getMods()) {
+            val version = mod.getLatest();
+            if (version != null) {
+                blackhole.consume(Updater.cachePath(mod, version, modCacheDir));
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Models.Manifest;
+import com.google.gson.stream.JsonWriter;
+import lombok.val;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Inputs for the benchmarks, all local so they run without network access.
+ * <p>
+ * The synthetic fixtures are generated from a fixed seed, so results of different runs and commits compare. Recorded
+ * copies of gtnh-assets.json and a manifest (daily.json) are used instead for the assets benchmarks when the
+ * {@code gtnh.fixtures} system property is set, see {@code -Pjmh.fixtures}: {@value #BUNDLED} uses the trimmed pair in
+ * {@code src/jmh/resources/fixtures}, anything else is a directory whose copies are used, each file falling back to the
+ * bundled one when the directory doesn't hold it.
+ */
+final class Fixtures {
+    private static final long SEED = 42;
+    static final String BUNDLED = "bundled";
+    private static final String[] PREFIXES = {"Applied", "Better", "Ender", "Galacti", "Gregs", "Neo", "Not", "Super", "Thaumic", "Twilight"};
+    private static final String[] SUFFIXES = {"Core", "Craft", "Energistics", "Items", "Mixins", "Storage", "Tweaks", "Utilities", "Works", "Zoom"};
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return gtnh-assets.json with {@code mods} mods of {@code versions} versions each, or the recorded copy
+     */
+    static String assetsJson(int mods, int versions) {
+        val recorded = recorded("gtnh-assets.json");
+        return recorded != null ? recorded : syntheticAssetsJson(mods, versions);
+    }
+
+    /**
+     * @return a manifest selecting the newest version of all but every 20th mod of {@link #assetsJson}, or the recorded
+     * copy
+     */
+    static String manifestJson(int mods, int versions) {
+        val recorded = recorded("daily.json");
+        return recorded != null ? recorded : syntheticManifestJson(mods, versions);
+    }
+
+    /**
+     * @return synthetic assets parsed the way the updater does it, with cache paths under {@code modCacheDir}
+     */
+    static Assets.Asset assets(int mods, int versions, Path modCacheDir) {
+        try {
+            val manifest = JsonParser.parse(syntheticManifestJson(mods, versions), Manifest.class);
+            val assets = AssetsParser.parse(new StringReader(syntheticAssetsJson(mods, versions)), manifest);
+            for (val mod : assets.getMods()) {
+                val version = mod.getLatest();
+                if (version != null) {
+                    version.setCachePath(Updater.cachePath(mod, version, modCacheDir));
+                }
+            }
+            return assets;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A mods directory as players leave it: mostly current jars, some left over from older nightlies under either
+     * file name, and a few of their own.
+     */
+    static Map<String, Path> installed(Assets.Asset assets, Path modsDir) {
+        val random = new Random(SEED);
+        val installed = new TreeMap<String, Path>();
+        int i = 0;
+        for (val mod : assets.getMods()) {
+            val version = mod.getLatest();
+            if (version == null) {
+                continue;
+            }
+            val roll = random.nextInt(100);
+            String fileName;
+            if (roll < 85 || mod.getRetiredFileNames().isEmpty()) {
+                fileName = version.getCachePath().getFileName().toString();
+            } else {
+                val retired = new ArrayList<>(mod.getRetiredFileNames());
+                fileName = retired.get(random.nextInt(retired.size()));
+            }
+            installed.put(fileName, modsDir.resolve(fileName));
+            if (++i % 50 == 0) {
+                val own = String.format("PlayerMod%d-1.0.jar", i);
+                installed.put(own, modsDir.resolve(own));
+            }
+        }
+        return installed;
+    }
+
+    /**
+     * A mods directory holding builds of every mod that no manifest ever listed, so each one has to be matched by
+     * pattern instead of by name.
+     */
+    static Map<String, Path> unlistedBuilds(Assets.Asset assets, Path modsDir) {
+        val installed = new TreeMap<String, Path>();
+        for (val mod : assets.getMods()) {
+            val version = mod.getLatest();
+            if (version == null) {
+                continue;
+            }
+            val fileName = version.getCachePath().getFileName().toString().replace(version.getVersion(), version.getVersion() + "-pre-local");
+            installed.put(fileName, modsDir.resolve(fileName));
+        }
+        return installed;
+    }
+
+    /**
+     * @return file names as they come from GitHub releases and maven, some with characters no file system accepts
+     */
+    static List<String> fileNames(int count) {
+        val random = new Random(SEED);
+        val fileNames = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            val name = modName(random, i) + "-" + versions(random, 1).getFirst();
+            fileNames.add(switch (i % 10) {
+                case 0 -> name.replace("-", ":") + ".jar";
+                case 1 -> name + " .jar";
+                case 2 -> name + "<dev>|?.jar";
+                default -> name + ".jar";
+            });
+        }
+        return fileNames;
+    }
+
+    /**
+     * Creates an empty file for every entry of {@code installed}.
+     */
+    static void createFiles(Map<String, Path> installed) throws IOException {
+        for (val path : installed.values()) {
+            Files.createDirectories(path.getParent());
+            Files.createFile(path);
+        }
+    }
+
+    private static String syntheticAssetsJson(int mods, int versions) {
+        val random = new Random(SEED);
+        val out = new StringWriter();
+        try (val writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("latest_nightly").value(400);
+            writer.name("latest_successful_nightly").value(399);
+            writer.name("mods").beginArray();
+            for (int i = 0; i < mods; i++) {
+                val name = modName(random, i);
+                val modVersions = versions(random, versions);
+                writer.beginObject();
+                writer.name("name").value(name);
+                writer.name("source").value(i % 10 == 9 ? "curseforge" : null);
+                writer.name("private").value(i % 25 == 24);
+                writer.name("latest_version").value(modVersions.getLast());
+                writer.name("versions").beginArray();
+                for (val version : modVersions) {
+                    writer.beginObject();
+                    writer.name("version_tag").value(version);
+                    // github release assets often aren't named like the jars we install
+                    writer.name("filename").value(i % 3 == 0 ? name.toLowerCase() + "-" + version + "-dev.jar" : name + "-" + version + ".jar");
+                    writer.name("download_url").value(String.format("https://media.forgecdn.net/files/%s/%s-%s.jar", name, name, version));
+                    writer.name("browser_download_url").value(String.format("https://github.com/GTNewHorizons/%s/releases/download/%s/%s-%s.jar", name, version, name, version));
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static String syntheticManifestJson(int mods, int versions) {
+        // same sequence as the assets, so names and versions line up
+        val random = new Random(SEED);
+        val out = new StringWriter();
+        try (val writer = new JsonWriter(out)) {
+            val githubMods = new TreeMap<String, String[]>();
+            val externalMods = new TreeMap<String, String[]>();
+            for (int i = 0; i < mods; i++) {
+                val name = modName(random, i);
+                val latest = versions(random, versions).getLast();
+                if (i % 20 == 19) {
+                    continue;
+                }
+                val side = switch (i % 8) {
+                    case 0 -> "CLIENT";
+                    case 1 -> "SERVER";
+                    case 2 -> "BOTH_JAVA9";
+                    default -> "BOTH";
+                };
+                (i % 10 == 9 ? externalMods : githubMods).put(name, new String[]{latest, side});
+            }
+
+            writer.beginObject();
+            writer.name("config").value("2.8.0-nightly-400");
+            writeModEntries(writer, "github_mods", githubMods);
+            writeModEntries(writer, "external_mods", externalMods);
+            writer.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static void writeModEntries(JsonWriter writer, String name, Map<String, String[]> entries) throws IOException {
+        writer.name(name).beginObject();
+        for (val entry : entries.entrySet()) {
+            writer.name(entry.getKey()).beginObject();
+            writer.name("version").value(entry.getValue()[0]);
+            writer.name("side").value(entry.getValue()[1]);
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    private static String modName(Random random, int index) {
+        return PREFIXES[random.nextInt(PREFIXES.length)] + SUFFIXES[random.nextInt(SUFFIXES.length)] + index;
+    }
+
+    /**
+     * @return {@code count} ascending versions, every fourth one a -pre
+     */
+    private static List<String> versions(Random random, int count) {
+        val versions = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            val version = String.format("%d.%d.%d", 1 + i / 10, i % 10, random.nextInt(20));
+            versions.add(i % 4 == 3 ? version + "-pre" : version);
+        }
+        return versions;
+    }
+
+    private static String recorded(String fileName) {
+        val directory = System.getProperty("gtnh.fixtures");
+        if (directory == null) {
+            return null;
+        }
+        try {
+            val path = Path.of(directory, fileName);
+            if (!BUNDLED.equals(directory) && Files.isRegularFile(path)) {
+                return Files.readString(path);
+            }
+            try (val in = Fixtures.class.getResourceAsStream("/fixtures/" + fileName)) {
+                if (in == null) {
+                    throw new FileNotFoundException("fixtures/" + fileName);
+                }
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Identifying the jars of a mods directory by content, from scratch and with everything already indexed.
+ */
+@State(Scope.Benchmark)
+public class JarIndexBenchmark {
+    @Param({"400", "2000"})
+    int jars;
+
+    private Path directory;
+    private List<Path> paths;
+    private JarIndex indexed;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        directory = Files.createTempDirectory("jar-index-benchmark");
+        val modsDir = Files.createDirectories(directory.resolve("mods"));
+        val random = new Random(42);
+        paths = new ArrayList<>(jars);
+        for (int i = 0; i < jars; i++) {
+            val path = modsDir.resolve("Mod" + i + "-1.0.jar");
+            val payload = new byte[16 * 1024];
+            random.nextBytes(payload);
+            try (val zip = new ZipOutputStream(Files.newOutputStream(path))) {
+                zip.putNextEntry(new ZipEntry("mcmod.info"));
+                zip.write(String.format("[{\"modid\": \"mod%d\", \"version\": \"1.0\"}]", i).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+                zip.putNextEntry(new ZipEntry("payload.bin"));
+                zip.write(payload);
+                zip.closeEntry();
+            }
+            paths.add(path);
+        }
+        indexed = new JarIndex(directory, Runtime.getRuntime().availableProcessors());
+        indexed.identify(paths);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    /**
+     * What the first update with the index costs, every jar is hashed and its mcmod.info read.
+     */
+    @Benchmark
+    public Map<Path, JarIndex.Jar> identifyCold() throws IOException, InterruptedException {
+        Files.deleteIfExists(directory.resolve(JarIndex.FILE_NAME));
+        return new JarIndex(directory, Runtime.getRuntime().availableProcessors()).identify(paths);
+    }
+
+    /**
+     * What every later update costs, one stat per jar.
+     */
+    @Benchmark
+    public Map<Path, JarIndex.Jar> identifyIndexed() throws IOException, InterruptedException {
+        return indexed.identify(paths);
+    }
+}
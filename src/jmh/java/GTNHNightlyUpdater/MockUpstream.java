@@ -0,0 +1,302 @@
+package GTNHNightlyUpdater;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.val;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Stands in for raw.githubusercontent.com, nexus.gtnewhorizons.com and GitHub releases, so updates can be load tested
+ * locally and repeatably. Point the updater at it with {@code --upstream HOST=http://localhost:PORT} for each host.
+ * <p>
+ * Serves the assets and manifests from {@link Fixtures}, paged maven searches for every mod in them, and generated jars
+ * for any jar url. Every response is delayed by the configured latency and written no faster than the configured
+ * bandwidth, per connection. Conditional and range requests are honoured like upstream does.
+ */
+public class MockUpstream implements AutoCloseable {
+    static final List<String> HOSTS = List.of("raw.githubusercontent.com", "nexus.gtnewhorizons.com", "github.com", "media.forgecdn.net");
+    // smaller than nexus' 50, so searches take several pages like they do for mods with long histories
+    private static final int PAGE_SIZE = 4;
+    private static final int CHUNK_SIZE = 8192;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+    private static final Pattern MANIFEST = Pattern.compile(".*/releases/manifests/(daily|experimental)\\.json");
+
+    private final String assetsJson;
+    private final String manifestJson;
+    // mod name -> versions, oldest first
+    private final Map<String, List<String>> versions = new HashMap<>();
+    private final Duration latency;
+    private final long bytesPerSecond;
+    private final int jarSize;
+    private final Map<String, byte[]> jars = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /**
+     * @param bytesPerSecond bandwidth of each connection, 0 for unlimited
+     * @param jarSize        size of the payload in every generated jar
+     * @param port           0 for any free one
+     */
+    MockUpstream(int mods, int versionsPerMod, Duration latency, long bytesPerSecond, int jarSize, int port) throws IOException {
+        this.assetsJson = Fixtures.assetsJson(mods, versionsPerMod);
+        this.manifestJson = Fixtures.manifestJson(mods, versionsPerMod);
+        this.latency = latency;
+        this.bytesPerSecond = bytesPerSecond;
+        this.jarSize = jarSize;
+
+        val assets = com.google.gson.JsonParser.parseString(assetsJson).getAsJsonObject();
+        for (val element : assets.getAsJsonArray("mods")) {
+            val mod = element.getAsJsonObject();
+            val modVersions = new ArrayList<String>();
+            for (val version : mod.getAsJsonArray("versions")) {
+                modVersions.add(version.getAsJsonObject().get("version_tag").getAsString());
+            }
+            versions.put(mod.get("name").getAsString(), modVersions);
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return --upstream values sending every host the updater talks to here
+     */
+    Map<String, String> upstreams() {
+        val upstreams = new HashMap<String, String>();
+        for (val host : HOSTS) {
+            upstreams.put(host, getUrl());
+        }
+        return upstreams;
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            Thread.sleep(latency.toMillis());
+
+            val path = exchange.getRequestURI().getPath();
+            val query = query(exchange.getRequestURI().getRawQuery());
+            if (path.endsWith("/gtnh-assets.json")) {
+                sendMetadata(exchange, assetsJson);
+            } else if (MANIFEST.matcher(path).matches()) {
+                sendMetadata(exchange, manifestJson);
+            } else if (path.equals("/service/rest/v1/search/assets")) {
+                sendSearch(exchange, query);
+            } else if (path.equals("/service/rest/v1/search/assets/download")) {
+                val name = query.get("name");
+                val version = query.get("version");
+                if (name == null || !versions.containsKey(name) || !versions.get(name).contains(version)) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                sendJar(exchange, exchange.getRequestURI().toString());
+            } else if (path.endsWith(".jar") || path.endsWith(".zip")) {
+                sendJar(exchange, path);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendMetadata(HttpExchange exchange, String json) throws IOException, InterruptedException {
+        val etag = "\"" + sha256(json.getBytes(StandardCharsets.UTF_8)) + "\"";
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        send(exchange, 200, json.getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    private void sendSearch(HttpExchange exchange, Map<String, String> query) throws IOException, InterruptedException {
+        val name = query.get("name");
+        val modVersions = versions.getOrDefault(name, List.of());
+        val from = query.containsKey("continuationToken") ? Integer.parseInt(query.get("continuationToken")) : 0;
+        val to = Math.min(modVersions.size(), from + PAGE_SIZE);
+
+        val items = new JsonArray();
+        for (int i = from; i < to; i++) {
+            val version = modVersions.get(i);
+            val downloadUrl = String.format("https://nexus.gtnewhorizons.com/repository/public/com/github/GTNewHorizons/%s/%s/%s-%s.jar", name, version, name, version);
+            val item = new JsonObject();
+            item.addProperty("downloadUrl", downloadUrl);
+            item.addProperty("lastModified", Instant.ofEpochSecond(1_700_000_000L + i * 86_400L).toString());
+            val maven2 = new JsonObject();
+            maven2.addProperty("version", version);
+            maven2.addProperty("artifactId", name);
+            item.add("maven2", maven2);
+            val checksum = new JsonObject();
+            checksum.addProperty("sha256", sha256(jar(URI.create(downloadUrl).getPath())));
+            item.add("checksum", checksum);
+            items.add(item);
+        }
+
+        val index = new JsonObject();
+        index.add("items", items);
+        index.addProperty("continuationToken", to < modVersions.size() ? String.valueOf(to) : null);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        send(exchange, 200, index.toString().getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    private void sendJar(HttpExchange exchange, String key) throws IOException, InterruptedException {
+        val jar = jar(key);
+        long start = 0;
+        val range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            val matcher = RANGE.matcher(range);
+            if (matcher.matches()) {
+                start = Long.parseLong(matcher.group(1));
+            }
+        }
+        if (start > 0 && start >= jar.length) {
+            exchange.getResponseHeaders().add("Content-Range", "bytes */" + jar.length);
+            exchange.sendResponseHeaders(416, -1);
+            return;
+        }
+        if (start > 0) {
+            exchange.getResponseHeaders().add("Content-Range", String.format("bytes %d-%d/%d", start, jar.length - 1, jar.length));
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/java-archive");
+        if (exchange.getRequestMethod().equalsIgnoreCase("HEAD")) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(jar.length - start));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        send(exchange, start > 0 ? 206 : 200, jar, (int) start);
+    }
+
+    /**
+     * Writes {@code body} from {@code offset}, sleeping between chunks to stay within the bandwidth.
+     */
+    private void send(HttpExchange exchange, int status, byte[] body, int offset) throws IOException, InterruptedException {
+        val length = body.length - offset;
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        val began = System.nanoTime();
+        val out = exchange.getResponseBody();
+        for (int written = 0; written < length; ) {
+            val chunk = Math.min(CHUNK_SIZE, length - written);
+            out.write(body, offset + written, chunk);
+            written += chunk;
+            bytesSent.addAndGet(chunk);
+            if (bytesPerSecond > 0) {
+                val due = written * 1_000_000_000L / bytesPerSecond;
+                val ahead = due - (System.nanoTime() - began);
+                if (ahead > 0) {
+                    Thread.sleep(ahead / 1_000_000, (int) (ahead % 1_000_000));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a jar generated from {@code key}, the same every time
+     */
+    private byte[] jar(String key) {
+        return jars.computeIfAbsent(key, k -> {
+            val random = new Random(k.hashCode());
+            val payload = new byte[jarSize];
+            random.nextBytes(payload);
+            val out = new ByteArrayOutputStream(jarSize + 512);
+            try (val zip = new ZipOutputStream(out)) {
+                val name = k.substring(k.lastIndexOf('/') + 1);
+                zip.putNextEntry(new ZipEntry("mcmod.info"));
+                zip.write(String.format("[{\"modid\": \"%s\", \"version\": \"%d\"}]", name.replaceAll("\\W", ""), k.hashCode()).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+                zip.putNextEntry(new ZipEntry("payload.bin"));
+                zip.write(payload);
+                zip.closeEntry();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return out.toByteArray();
+        });
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        val query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (val parameter : rawQuery.split("&")) {
+            val split = parameter.split("=", 2);
+            query.put(URLDecoder.decode(split[0], StandardCharsets.UTF_8), split.length == 2 ? URLDecoder.decode(split[1], StandardCharsets.UTF_8) : "");
+        }
+        return query;
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    /**
+     * Runs the mock until stopped: {@code [port] [latency ms] [bytes per second] [mods]}.
+     */
+    public static void main(String[] args) throws Exception {
+        val port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        val latency = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 0);
+        val bytesPerSecond = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        val mods = args.length > 3 ? Integer.parseInt(args[3]) : 900;
+        try (val mock = new MockUpstream(mods, 10, latency, bytesPerSecond, 256 * 1024, port)) {
+            mock.start();
+            System.out.println("Serving on " + mock.getUrl() + ", run the updater with:");
+            for (val host : HOSTS) {
+                System.out.println("\t--upstream " + host + "=" + mock.getUrl());
+            }
+            Thread.currentThread().join();
+        }
+    }
+}
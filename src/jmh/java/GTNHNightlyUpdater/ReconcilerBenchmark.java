@@ -0,0 +1,79 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Working out what to change in a mods directory, and listing it, at the size of the pack and well beyond.
+ */
+@State(Scope.Benchmark)
+public class ReconcilerBenchmark {
+    @Param({"400", "2000", "10000"})
+    int jars;
+
+    private Path directory;
+    private Path modsDir;
+    private Assets.Asset assets;
+    private Map<String, Path> installed;
+    private Map<String, Path> unlistedBuilds;
+    private Updater updater;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("reconciler-benchmark");
+        modsDir = directory.resolve("mods");
+        assets = Fixtures.assets(jars, 10, directory.resolve("cache"));
+        installed = Fixtures.installed(assets, modsDir);
+        unlistedBuilds = Fixtures.unlistedBuilds(assets, modsDir);
+        Fixtures.createFiles(installed);
+        updater = new Updater(new Main.Options(), directory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Benchmark
+    public ModReconciler.Plan plan() {
+        return ModReconciler.plan(assets, Set.of(), Main.Options.Instance.InstanceConfig.Side.CLIENT, modsDir, installed, version -> true);
+    }
+
+    /**
+     * Every installed jar is an unknown build, so each lookup falls through to the version patterns.
+     */
+    @Benchmark
+    public ModReconciler.Plan planUnlistedBuilds() {
+        return ModReconciler.plan(assets, Set.of(), Main.Options.Instance.InstanceConfig.Side.CLIENT, modsDir, unlistedBuilds, version -> true);
+    }
+
+    @Benchmark
+    public Map<String, Path> gatherExistingMods() throws IOException {
+        return updater.gatherExistingMods(modsDir);
+    }
+
+    /**
+     * Most of what an update costs when the instance is already up to date, along with {@link #installedJars}.
+     */
+    @Benchmark
+    public String desiredHash() {
+        return InstanceState.desiredHash(assets, Set.of(), Main.Options.Instance.InstanceConfig.Side.CLIENT, InstallStrategy.COPY);
+    }
+
+    @Benchmark
+    public Map<String, Long> installedJars() throws IOException {
+        return InstanceState.installedJars(modsDir);
+    }
+}
@@ -0,0 +1,74 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Resolving the assets and filling an empty cache against {@link MockUpstream}, at upstream-like latency and bandwidth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+public class UpdateBenchmark {
+    @Param({"200"})
+    int mods;
+    @Param({"0", "50"})
+    long latencyMillis;
+    // per connection, 0 for unlimited
+    @Param({"0", "4194304"})
+    long bytesPerSecond;
+    @Param({"8"})
+    int downloadThreads;
+
+    private MockUpstream upstream;
+    private Path cacheDir;
+    private Updater updater;
+
+    @Setup(Level.Trial)
+    public void startUpstream() throws IOException {
+        upstream = new MockUpstream(mods, 10, Duration.ofMillis(latencyMillis), bytesPerSecond, 256 * 1024, 0);
+        upstream.start();
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyCache() throws IOException {
+        cacheDir = Files.createTempDirectory("update-benchmark");
+        val options = new Main.Options();
+        options.targetManifest = Main.Options.TargetManifest.DAILY;
+        options.downloadThreads = downloadThreads;
+        options.downloadRetries = 0;
+        options.upstreams = upstream.upstreams();
+        updater = new Updater(options, cacheDir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteCache() throws IOException {
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopUpstream() {
+        upstream.close();
+    }
+
+    @Benchmark
+    public void update() throws IOException, InterruptedException {
+        val modCacheDir = cacheDir.resolve("mods");
+        val assets = updater.fetchDAXXLAssets();
+        updater.cacheMods(assets, Set.of(), modCacheDir, new CacheManager(cacheDir, new CacheManager.Policy(0, Duration.ofDays(30))));
+    }
+}
@@ -0,0 +1,157 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Models.Manifest;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Streams gtnh-assets.json into the {@link Assets} model, applying the manifest's sides and versions on the way.
+ * <p>
+ * Only the version the manifest selects is kept for each mod. The file names of all other versions are kept in
+ * {@link Assets.Mod#getRetiredFileNames()} so installed copies of them can still be found and removed.
+ */
+public class AssetsParser {
+    static Assets.Asset parse(Reader json, Manifest manifest) throws IOException {
+        try (val reader = new JsonReader(json)) {
+            val mods = new ArrayList<Assets.Mod>();
+            int latestNightly = 0;
+            int latestSuccessfulNightly = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "mods" -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            mods.add(readMod(reader, manifest));
+                        }
+                        reader.endArray();
+                    }
+                    case "latest_nightly" -> latestNightly = nextInt(reader);
+                    case "latest_successful_nightly" -> latestSuccessfulNightly = nextInt(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            val asset = new Assets.Asset(mods, latestNightly, latestSuccessfulNightly);
+            asset.setConfigTag(manifest.config());
+            return asset;
+        }
+    }
+
+    private static Assets.Mod readMod(JsonReader reader, Manifest manifest) throws IOException {
+        String name = null;
+        String source = null;
+        String latestVersion = null;
+        boolean isPrivate = false;
+        // versions may come before the name, so they're only filtered once the whole mod has been read
+        val versions = new ArrayList<Assets.Version>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> name = nextString(reader);
+                case "source" -> source = nextString(reader);
+                case "private" -> isPrivate = nextBoolean(reader);
+                case "latest_version" -> latestVersion = nextString(reader);
+                case "versions" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        versions.add(readVersion(reader));
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        val mod = new Assets.Mod(name, source, new ArrayList<>());
+        mod.setPrivate(isPrivate);
+        mod.setLatestVersion(latestVersion);
+        // mods missing from the manifest aren't part of the pack
+        mod.setSide("NONE");
+
+        val manifestEntry = manifest.getMod(name);
+        if (manifestEntry != null) {
+            mod.setSide(manifestEntry.side());
+            mod.setLatestVersion(manifestEntry.version());
+        }
+
+        // Unimixins needs to loaded before all other mods
+        val modFileName = "UniMixins".equals(name) ? "+" + name : name;
+        for (val version : versions) {
+            version.setFileName(String.format("%s-%s.jar", modFileName, version.getVersion()));
+            // only non-gtnh mods
+            if (source != null && version.getDownloadUrl() != null) {
+                version.setBrowserDownloadUrl(version.getDownloadUrl());
+            }
+
+            if (manifestEntry != null && version.getVersion().equals(manifestEntry.version())) {
+                mod.addVersion(version);
+            } else {
+                mod.getRetiredFileNames().add(version.getFileName());
+                if (version.getGithubName() != null) {
+                    mod.getRetiredFileNames().add(version.getGithubName());
+                }
+            }
+        }
+        return mod;
+    }
+
+    private static Assets.Version readVersion(JsonReader reader) throws IOException {
+        String versionTag = null;
+        String githubName = null;
+        String downloadUrl = null;
+        String browserDownloadUrl = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "version_tag" -> versionTag = nextString(reader);
+                case "filename" -> githubName = nextString(reader);
+                case "download_url" -> downloadUrl = nextString(reader);
+                case "browser_download_url" -> browserDownloadUrl = nextString(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        val version = new Assets.Version(versionTag);
+        version.setGithubName(githubName);
+        version.setDownloadUrl(downloadUrl);
+        version.setBrowserDownloadUrl(browserDownloadUrl);
+        return version;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static boolean nextBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return false;
+        }
+        return reader.nextBoolean();
+    }
+
+    private static int nextInt(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextInt();
+    }
+}
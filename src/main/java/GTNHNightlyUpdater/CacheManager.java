@@ -0,0 +1,256 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import com.google.gson.JsonParseException;
+import lombok.Cleanup;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which cached mod files to keep.
+ * <p>
+ * Files installed in any instance that was ever updated from this cache are always kept, including the previous mods
+ * directory kept for rollback and the extra assets of installed jars, and so are the files the running update wants. Of the rest, files not used for longer
+ * than the maximum age are removed, then the least recently used ones until the cache fits the size budget. A file
+ * counts as used whenever an update wants it.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class CacheManager {
+    // kept next to a cached file while it is downloaded, verified or linked, and removed with it
+    private static final List<String> SIDECAR_SUFFIXES = List.of(ContentStore.RECORD_EXTENSION, ContentStore.RECORD_EXTENSION + ".tmp", ".part", ".tmp", ".link");
+    private final Path modCacheDir;
+    private final Path usagePath;
+    private final Path instancesPath;
+    private final Policy policy;
+    // cache entry relative to the mod cache directory -> last time an update wanted it
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    // wanted by the update running now, removing them would only mean downloading them again next time
+    private final Set<String> usedNow = ConcurrentHashMap.newKeySet();
+    private final TreeSet<String> instances;
+
+    /**
+     * @param maxBytes size budget for the cached files, 0 for none
+     * @param maxAge   how long an unused file is kept, negative for forever
+     */
+    record Policy(long maxBytes, Duration maxAge) {
+    }
+
+    record Result(long totalBytes, long reclaimedBytes, int removed) {
+    }
+
+    private record Usage(Map<String, Long> lastUsed) {
+    }
+
+    private record Instances(List<String> minecraftDirs) {
+    }
+
+    private record Entry(Path path, String key, long size, long lastUsed) {
+    }
+
+    CacheManager(Path cacheDir, Policy policy) throws IOException {
+        this.modCacheDir = cacheDir.resolve("mods");
+        this.usagePath = cacheDir.resolve("usage.json");
+        this.instancesPath = cacheDir.resolve("instances.json");
+        this.policy = policy;
+
+        val usage = read(usagePath, Usage.class);
+        if (usage != null && usage.lastUsed() != null) {
+            lastUsed.putAll(usage.lastUsed());
+        }
+        val registered = read(instancesPath, Instances.class);
+        this.instances = registered != null && registered.minecraftDirs() != null ? new TreeSet<>(registered.minecraftDirs()) : new TreeSet<>();
+    }
+
+    void markUsed(Path entry) {
+        val key = key(entry);
+        lastUsed.put(key, System.currentTimeMillis());
+        usedNow.add(key);
+    }
+
+    void saveUsage() throws IOException {
+        write(usagePath, new Usage(Map.copyOf(lastUsed)));
+    }
+
+    /**
+     * Remembers an instance, so the files it uses are kept even on runs that don't update it.
+     *
+     * @param dryRun only keep its files during this run, without writing {@code instances.json}
+     */
+    void registerInstance(Path minecraftDir, boolean dryRun) throws IOException {
+        if (instances.add(minecraftDir.toAbsolutePath().normalize().toString()) && !dryRun) {
+            write(instancesPath, new Instances(List.copyOf(instances)));
+        }
+    }
+
+    /**
+     * Removes whatever the policy doesn't keep, then the store objects no cached file points to anymore.
+     *
+     * @param dryRun only work out what would be removed, without writing anything
+     */
+    Result collect(boolean dryRun) throws IOException {
+        @Cleanup val timer = Metrics.time("cache_gc");
+        log.info("Cleaning cache");
+        if (!dryRun) {
+            saveUsage();
+        }
+        if (Files.notExists(modCacheDir)) {
+            return new Result(0, 0, 0);
+        }
+
+        val referenced = referencedFileNames(dryRun);
+        val entries = new ArrayList<Entry>();
+        long totalBytes = 0;
+        try (val paths = Files.walk(modCacheDir, 2)) {
+            for (val path : (Iterable<Path>) paths::iterator) {
+                val attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attributes.isRegularFile() || isSidecar(path)) {
+                    continue;
+                }
+                val key = key(path);
+                val entry = new Entry(path, key, attributes.size(), lastUsed.getOrDefault(key, attributes.lastModifiedTime().toMillis()));
+                totalBytes += entry.size();
+                if (!isReferenced(referenced, path.getFileName().toString()) && !usedNow.contains(key)) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparingLong(Entry::lastUsed));
+        val now = System.currentTimeMillis();
+        long remainingBytes = totalBytes;
+        long reclaimedBytes = 0;
+        int removed = 0;
+        for (val entry : entries) {
+            val expired = !policy.maxAge().isNegative() && now - entry.lastUsed() > policy.maxAge().toMillis();
+            val overBudget = policy.maxBytes() > 0 && remainingBytes > policy.maxBytes();
+            if (!expired && !overBudget) {
+                continue;
+            }
+
+            log.info("\t{} {} ({} bytes, {})", dryRun ? "Would remove" : "Removing", entry.key(), entry.size(), expired ? "unused for too long" : "over the size budget");
+            if (!dryRun) {
+                Files.deleteIfExists(entry.path());
+                for (val suffix : SIDECAR_SUFFIXES) {
+                    Files.deleteIfExists(entry.path().resolveSibling(entry.path().getFileName() + suffix));
+                }
+                lastUsed.remove(entry.key());
+            }
+            remainingBytes -= entry.size();
+            reclaimedBytes += entry.size();
+            removed++;
+        }
+
+        if (policy.maxBytes() > 0 && remainingBytes > policy.maxBytes()) {
+            log.warn("\tCache is {} bytes, over the budget of {} bytes, because instances and this update use the rest", remainingBytes, policy.maxBytes());
+        }
+
+        if (!dryRun) {
+            saveUsage();
+            removeEmptyDirectories();
+            new ContentStore(modCacheDir.resolveSibling("store")).removeUnreferenced(modCacheDir);
+        }
+        return new Result(totalBytes, reclaimedBytes, removed);
+    }
+
+    /**
+     * @return names of the jars in the mods directories, current and previous, of every registered instance
+     */
+    private Set<String> referencedFileNames(boolean dryRun) throws IOException {
+        val names = new HashSet<String>();
+        for (val minecraftDir : List.copyOf(instances)) {
+            val path = Path.of(minecraftDir);
+            if (Files.notExists(path)) {
+                log.info("\tForgetting instance {}, it no longer exists", minecraftDir);
+                instances.remove(minecraftDir);
+                continue;
+            }
+
+            val modsDir = path.resolve("mods");
+            addFileNames(names, modsDir);
+            addFileNames(names, modsDir.resolveSibling(modsDir.getFileName() + ModsTransaction.PREVIOUS_SUFFIX));
+        }
+        if (!dryRun) {
+            write(instancesPath, new Instances(List.copyOf(instances)));
+        }
+        return names;
+    }
+
+    /**
+     * @return whether an instance has the file installed, or the jar it is an extra asset of, e.g. lwjgl3ify's multimc
+     * zip, which is extracted instead of installed under its own name
+     */
+    private static boolean isReferenced(Set<String> referenced, String fileName) {
+        if (referenced.contains(fileName)) {
+            return true;
+        }
+        for (val suffix : List.of(Updater.MULTIMC_ZIP_SUFFIX, Updater.FORGE_PATCHES_SUFFIX)) {
+            if (fileName.endsWith(suffix) && referenced.contains(fileName.substring(0, fileName.length() - suffix.length()) + ".jar")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addFileNames(Set<String> names, Path directory) throws IOException {
+        if (Files.notExists(directory)) {
+            return;
+        }
+        try (val paths = Files.list(directory)) {
+            paths.forEach(path -> names.add(path.getFileName().toString()));
+        }
+    }
+
+    private static boolean isSidecar(Path path) {
+        val name = path.getFileName().toString();
+        return SIDECAR_SUFFIXES.stream().anyMatch(name::endsWith);
+    }
+
+    private void removeEmptyDirectories() throws IOException {
+        try (val paths = Files.list(modCacheDir)) {
+            for (val path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                try (val children = Files.list(path)) {
+                    if (children.findAny().isEmpty()) {
+                        Files.delete(path);
+                    }
+                }
+            }
+        }
+    }
+
+    private String key(Path entry) {
+        return modCacheDir.relativize(entry).toString().replace('\\', '/');
+    }
+
+    private static <T> T read(Path path, Class<T> clazz) throws IOException {
+        if (Files.notExists(path)) {
+            return null;
+        }
+        try {
+            return JsonParser.parse(Files.readString(path), clazz);
+        } catch (JsonParseException e) {
+            log.warn("Ignoring unreadable {}", path);
+            return null;
+        }
+    }
+
+    private static void write(Path path, Object value) throws IOException {
+        Files.createDirectories(path.getParent());
+        val temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, JsonParser.toJson(value));
+        AtomicFiles.move(temp, path);
+    }
+}
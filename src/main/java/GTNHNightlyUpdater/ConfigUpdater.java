@@ -1,85 +1,172 @@
 package GTNHNightlyUpdater;
 
+import lombok.Cleanup;
+import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.io.FileUtils;
+import lombok.val;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.ContentMergeStrategy;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.merge.ResolveMerger;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Log4j2(topic = "GTNHNightlyUpdater")
 public class ConfigUpdater {
     static final String CONFIG_REPO = "https://github.com/GTNewHorizons/GT-New-Horizons-Modpack";
+    private static final PersonIdent IDENT = new PersonIdent("User", "fakeemail@example.com");
+    // instances are updated concurrently, but only one of them may ask for confirmation at a time
+    private static final Object PROMPT_LOCK = new Object();
+    // instances share one repo, so each ref is fetched once per run and worktrees are added one at a time
+    private static final Object SHARED_REPO_LOCK = new Object();
+    private static final Set<String> FETCHED = ConcurrentHashMap.newKeySet();
+    // kept open for the whole run, so later instances find its refs and packs already read
+    private static final Map<File, Repository> SHARED_REPOS = new ConcurrentHashMap<>();
+    // the only part of the modpack repo instances need, nothing else is written to worktrees of the shared repo
+    private static final String CONFIG_DIR = "config";
     private final File minecraftDir;
+    private final File sharedRepoDir;
     private final String configTag;
+    private final DirectorySync directorySync;
 
 
-    ConfigUpdater(File minecraftDir, String configTag) {
+    ConfigUpdater(File minecraftDir, File cacheDir, String configTag, int syncThreads) {
         this.minecraftDir = minecraftDir;
+        this.sharedRepoDir = new File(cacheDir, "configs.git");
         this.configTag = configTag;
+        this.directorySync = new DirectorySync(syncThreads);
     }
 
-    public void run() throws IOException {
+    enum Status {
+        // configs get replaced with the pack's on the first run
+        REPLACE,
+        UPDATE,
+        UP_TO_DATE,
+        UNKNOWN
+    }
+
+    /**
+     * Thrown when upstream config changes can't be merged, with what went wrong for each path.
+     */
+    static class MergeConflictException extends RuntimeException {
+        @Getter
+        private final Map<String, String> paths;
+
+        MergeConflictException(File repo, Map<String, String> paths) {
+            super(String.format("There are conflicts that need to be resolved manually. Please check the repo at [%s]: %s", repo.getAbsolutePath(), paths));
+            this.paths = paths;
+        }
+    }
+
+    /**
+     * Works out what {@link #run()} would do without changing anything or going online.
+     */
+    Status status() {
         File packConfigsDir = new File(minecraftDir, ".updater_pack_configs");
+        if (!new File(packConfigsDir, ".git").exists()) {
+            return Status.REPLACE;
+        }
+        // master can't be checked without fetching
+        if (configTag == null) {
+            return Status.UNKNOWN;
+        }
 
-        // Check if Git is installed
-        if (!isGitInstalled()) {
-            log.warn("Git is not installed on your system, not handling configs");
-            return;
+        // merged tags are fetched into the local repo, so the tag being there and merged means there is nothing to do
+        try (Repository repo = openWorktree(packConfigsDir); RevWalk walk = new RevWalk(repo)) {
+            ObjectId tag = repo.resolve(Constants.R_TAGS + configTag + "^{commit}");
+            ObjectId head = repo.resolve(Constants.HEAD);
+            if (tag == null || head == null) {
+                return Status.UPDATE;
+            }
+            return walk.isMergedInto(walk.parseCommit(tag), walk.parseCommit(head)) ? Status.UP_TO_DATE : Status.UPDATE;
+        } catch (IOException e) {
+            return Status.UNKNOWN;
         }
+    }
+
+    public void run() throws IOException {
+        @Cleanup Metrics.Timer timer = Metrics.time("configs");
+        File packConfigsDir = new File(minecraftDir, ".updater_pack_configs");
 
         log.info("Updating configs from tag/branch '{}'", configTag != null ? configTag : "origin/master");
 
-        // Init repo if needed
-        if (initializeGitRepository(packConfigsDir)) {
-            System.out.printf("WARNING: In order to have proper tracking of configs, your configs will be replaced with the latest from [%s [%s]]%n", CONFIG_REPO, configTag);
-            Scanner scanner = new Scanner(System.in);
-            while (true) {
-                System.out.println("Press 'y' to confirm");
-                // dev note: there is a bug in intellij where the console returns without user input
-                String input = scanner.nextLine();
-                // String input = "y";
-
-                if (input.equalsIgnoreCase("y")) {
-                    break;
-                } else {
-                    System.out.println("Invalid input. Please try again.");
+        try {
+            // Init repo if needed
+            if (initializeGitRepository(packConfigsDir)) {
+                synchronized (PROMPT_LOCK) {
+                    System.out.printf("WARNING: In order to have proper tracking of configs, your configs will be replaced with the latest from [%s [%s]] in %s%n", CONFIG_REPO, configTag, minecraftDir);
+                    Scanner scanner = new Scanner(System.in);
+                    while (true) {
+                        System.out.println("Press 'y' to confirm");
+                        // dev note: there is a bug in intellij where the console returns without user input
+                        String input = scanner.nextLine();
+                        // String input = "y";
+
+                        if (input.equalsIgnoreCase("y")) {
+                            break;
+                        } else {
+                            System.out.println("Invalid input. Please try again.");
+                        }
+                    }
                 }
-            }
-        } else {
-            // Copy current player's configs to .pack_configs/config
-            copyConfigurations(minecraftDir, packConfigsDir);
+            } else {
+                @Cleanup Repository repo = openWorktree(packConfigsDir);
+                @Cleanup Git git = new Git(repo);
+
+                // Copy current player's configs to .pack_configs/config
+                copyConfigurations(minecraftDir, packConfigsDir);
 
-            // Stage and commit changes
-            stageAndCommitChanges(packConfigsDir);
+                // Stage and commit changes
+                stageAndCommitChanges(git);
 
-            // Merge any changes
-            mergeChanges(packConfigsDir);
+                // Merge any changes
+                mergeChanges(git, packConfigsDir);
+            }
+        } catch (GitAPIException e) {
+            throw new IOException(e.getMessage(), e);
         }
 
         // Copy .pack_configs/config to .minecraft/config
         copyConfigurations(packConfigsDir, minecraftDir);
     }
 
-
-    private boolean isGitInstalled() {
-        try {
-            runCommand("git", "--version");
-            return true;
-        } catch (IOException e) {
-            return false;
-        }
-    }
-
-    private boolean initializeGitRepository(File configDirectory) throws IOException {
+    private boolean initializeGitRepository(File configDirectory) throws IOException, GitAPIException {
         if (!new File(configDirectory, ".git").exists()) {
-            runCommand("git", "clone", "--no-tags", "--single-branch", "--branch", configTag != null ? configTag : "master", CONFIG_REPO, configDirectory.getAbsolutePath());
-            runCommand("git", "-C", configDirectory.getAbsolutePath(), "config", "--local", "user.name", "User");
-            runCommand("git", "-C", configDirectory.getAbsolutePath(), "config", "--local", "user.email", "fakeemail@example.com");
-            runCommand("git", "-C", configDirectory.getAbsolutePath(), "checkout", "-b", "local");
+            fetchSharedRepository();
+            addWorktree(configDirectory);
             File dest = new File(minecraftDir, "config_backup_updater");
-            deleteExistingFiles(dest);
-            FileUtils.copyDirectory(new File(minecraftDir, "config"), dest);
+            sync(new File(minecraftDir, "config"), dest);
             log.info("Backed up original config to {}", dest);
             return true;
         }
@@ -87,67 +174,304 @@ public class ConfigUpdater {
         return false;
     }
 
-    private void deleteExistingFiles(File directory) {
-        log.debug("Deleting [{}]", directory);
-        if (directory.exists()) {
-            for (File file : directory.listFiles()) {
-                if (file.isDirectory()) {
-                    deleteExistingFiles(file);
-                    file.delete();
-                } else {
-                    file.delete();
+    /**
+     * Fetches the target tag or master into the shared repo, unless another instance already did during this run. The
+     * first fetch is shallow; later ones only bring the commits since, and merges fetch the rest of the history if that
+     * leaves them without a base.
+     */
+    private void fetchSharedRepository() throws IOException, GitAPIException {
+        synchronized (SHARED_REPO_LOCK) {
+            String key = sharedRepoDir.getAbsolutePath() + " " + targetRef();
+            if (FETCHED.contains(key)) {
+                return;
+            }
+            Repository shared = sharedRepository();
+            log.info("Fetching {} into {}", targetRef(), sharedRepoDir);
+            val fetch = Git.wrap(shared).fetch()
+                    .setRemote("origin")
+                    .setRefSpecs(new RefSpec(configTag != null ? "+" + targetRef() + ":" + targetRef() : "+refs/heads/master:" + targetRef()))
+                    .setTagOpt(TagOpt.NO_TAGS);
+            if (!new File(sharedRepoDir, "shallow").exists()) {
+                fetch.setDepth(1);
+            }
+            fetch.call();
+            FETCHED.add(key);
+        }
+    }
+
+    private Repository sharedRepository() throws IOException, GitAPIException {
+        Repository shared = SHARED_REPOS.get(sharedRepoDir);
+        if (shared != null) {
+            return shared;
+        }
+        if (!new File(sharedRepoDir, Constants.HEAD).exists()) {
+            try (Git git = Git.init().setBare(true).setDirectory(sharedRepoDir).call()) {
+                git.remoteAdd().setName("origin").setUri(new URIish(CONFIG_REPO)).call();
+                // merge commits are made with the identity from the config
+                val config = git.getRepository().getConfig();
+                config.setString("user", null, "name", IDENT.getName());
+                config.setString("user", null, "email", IDENT.getEmailAddress());
+                config.save();
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        shared = new FileRepositoryBuilder().setGitDir(sharedRepoDir).setBare().setMustExist(true).build();
+        SHARED_REPOS.put(sharedRepoDir, shared);
+        return shared;
+    }
+
+    /**
+     * Makes {@code configDirectory} a linked worktree of the shared repo, as {@code git worktree add} would, on a branch
+     * of its own starting at the target ref. Its history and objects stay in the shared repo.
+     */
+    private void addWorktree(File configDirectory) throws IOException, GitAPIException {
+        String branch = localBranch();
+        synchronized (SHARED_REPO_LOCK) {
+            Repository shared = sharedRepository();
+            ObjectId start = shared.resolve(targetRef() + "^{commit}");
+            if (start == null) {
+                throw new IOException("Unable to find " + targetRef() + " in " + sharedRepoDir);
+            }
+            RefUpdate update = shared.updateRef(Constants.R_HEADS + branch);
+            update.setNewObjectId(start);
+            update.forceUpdate();
+
+            Path adminDir = sharedRepoDir.toPath().resolve("worktrees").resolve(branch);
+            Files.createDirectories(adminDir);
+            Files.createDirectories(configDirectory.toPath());
+            Files.writeString(adminDir.resolve("commondir"), "../..\n");
+            Files.writeString(adminDir.resolve("gitdir"), new File(configDirectory, Constants.DOT_GIT).getAbsolutePath() + "\n");
+            Files.writeString(adminDir.resolve(Constants.HEAD), "ref: " + Constants.R_HEADS + branch + "\n");
+            Files.writeString(configDirectory.toPath().resolve(Constants.DOT_GIT), "gitdir: " + adminDir.toAbsolutePath() + "\n");
+        }
+
+        try (Repository repo = openWorktree(configDirectory); Git git = new Git(repo)) {
+            checkoutConfigDir(git, null);
+        }
+    }
+
+    /**
+     * Points the index at HEAD and writes {@code config/} from it. The index keeps the whole tree, so commits and merges
+     * keep everything else, which is never written to the worktree.
+     *
+     * @param previous the commit the worktree's {@code config/} was written from, only what changed since is written, or
+     *                 {@code null} to write all of it
+     */
+    private static void checkoutConfigDir(Git git, ObjectId previous) throws IOException, GitAPIException {
+        Repository repo = git.getRepository();
+        git.reset().setMode(ResetCommand.ResetType.MIXED).call();
+        if (previous == null) {
+            git.checkout().addPath(CONFIG_DIR).call();
+            return;
+        }
+
+        List<DiffEntry> diffs;
+        try (val reader = repo.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+            diffs = git.diff()
+                    .setOldTree(new CanonicalTreeParser(null, reader, walk.parseCommit(previous).getTree()))
+                    .setNewTree(new CanonicalTreeParser(null, reader, walk.parseCommit(repo.resolve(Constants.HEAD)).getTree()))
+                    .setPathFilter(PathFilter.create(CONFIG_DIR))
+                    .call();
+        }
+        val checkout = git.checkout();
+        boolean changed = false;
+        for (DiffEntry diff : diffs) {
+            switch (diff.getChangeType()) {
+                case DELETE -> Files.deleteIfExists(repo.getWorkTree().toPath().resolve(diff.getOldPath()));
+                case RENAME -> {
+                    Files.deleteIfExists(repo.getWorkTree().toPath().resolve(diff.getOldPath()));
+                    checkout.addPath(diff.getNewPath());
+                    changed = true;
+                }
+                default -> {
+                    checkout.addPath(diff.getNewPath());
+                    changed = true;
                 }
             }
-            directory.mkdirs(); // Re-create the directory
-        } else {
-            directory.mkdirs();
+        }
+        if (changed) {
+            checkout.call();
+        }
+    }
+
+    private static boolean hasMergeBase(Repository repo, ObjectId head, ObjectId target) throws IOException {
+        try (RevWalk walk = new RevWalk(repo)) {
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(head));
+            walk.markStart(walk.parseCommit(target));
+            return walk.next() != null;
         }
     }
 
+    /**
+     * Fetches the history the shallow first fetch left out, for targets that aren't descendants of what was merged
+     * before. JGit only asks for refs it doesn't already have all of, so the branches are fetched too: the commit the
+     * history was cut at is on one of them, and the pack's branches have moved on since it was fetched.
+     */
+    private void unshallowSharedRepository() throws IOException, GitAPIException {
+        synchronized (SHARED_REPO_LOCK) {
+            if (!new File(sharedRepoDir, "shallow").exists()) {
+                return;
+            }
+            log.info("Fetching the full history of {} into {}", targetRef(), sharedRepoDir);
+            Git.wrap(sharedRepository()).fetch()
+                    .setRemote("origin")
+                    .setRefSpecs(new RefSpec(configTag != null ? "+" + targetRef() + ":" + targetRef() : "+refs/heads/master:" + targetRef()),
+                            new RefSpec("+refs/heads/*:refs/remotes/origin/*"))
+                    .setTagOpt(TagOpt.NO_TAGS)
+                    .setUnshallow(true)
+                    .call();
+        }
+    }
+
+    private void commitMerge(Repository repo, ObjectId head, ObjectId target, ObjectId tree) throws IOException {
+        val commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        commit.setParentIds(head, target);
+        commit.setAuthor(IDENT);
+        commit.setCommitter(IDENT);
+        commit.setMessage(configTag != null ? "Merge tag '" + configTag + "'" : "Merge remote-tracking branch 'origin/master'");
+        ObjectId id;
+        try (ObjectInserter inserter = repo.newObjectInserter()) {
+            id = inserter.insert(commit);
+            inserter.flush();
+        }
+        RefUpdate update = repo.updateRef(Constants.HEAD);
+        update.setNewObjectId(id);
+        update.setExpectedOldObjectId(head);
+        update.setRefLogMessage("merge " + targetRef(), false);
+        RefUpdate.Result result = update.update();
+        if (result != RefUpdate.Result.FAST_FORWARD && result != RefUpdate.Result.NEW && result != RefUpdate.Result.FORCED) {
+            throw new IOException("Unable to move HEAD to the merge of " + targetRef() + ": " + result);
+        }
+    }
+
+    private String targetRef() {
+        return configTag != null ? Constants.R_TAGS + configTag : "refs/remotes/origin/master";
+    }
+
+    /**
+     * @return the branch holding this instance's commits, worktrees can't share one
+     */
+    private String localBranch() {
+        return "local-" + Integer.toHexString(minecraftDir.getAbsolutePath().hashCode());
+    }
+
+    private static Repository openWorktree(File packConfigsDir) throws IOException {
+        // a full clone made by older versions, or a .git file pointing into the shared repo
+        return new FileRepositoryBuilder().setWorkTree(packConfigsDir).setMustExist(true).build();
+    }
+
     private void copyConfigurations(File sourceDir, File targetDir) throws IOException {
         File source = new File(sourceDir, "config");
         File dest = new File(targetDir, "config");
-        log.debug("Copying from [{}] to [{}]", source, dest);
-
-        deleteExistingFiles(dest);
+        val result = sync(source, dest);
+        log.info("\tSynced {} to {}: {} copied, {} deleted, {} unchanged", source, dest, result.copied().size(), result.deleted().size(), result.unchanged());
+    }
 
-        FileUtils.copyDirectory(source, dest);
+    private DirectorySync.Result sync(File source, File dest) throws IOException {
+        try {
+            return directorySync.sync(source.toPath(), dest.toPath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying configs", e);
+        }
     }
 
-    private void stageAndCommitChanges(File packConfigsDir) throws IOException {
+    /**
+     * Stages what changed under {@code config/}. That is what the sync just copied or deleted, but also anything an
+     * earlier run copied and then crashed before committing, which would otherwise make every later merge fail.
+     */
+    private void stageAndCommitChanges(Git git) throws GitAPIException {
+        val status = git.status().addPath(CONFIG_DIR).call();
+        val changed = new TreeSet<String>(status.getModified());
+        changed.addAll(status.getUntracked());
+        val missing = status.getMissing();
+        if (changed.isEmpty() && missing.isEmpty()) {
+            log.info("No config changes to commit");
+            return;
+        }
         log.info("Staging and commiting config changes");
-        runCommand("git", "-C", packConfigsDir.getAbsolutePath(), "add", ".");
-        runCommand("git", "-C", packConfigsDir.getAbsolutePath(), "commit", "--allow-empty", "-m", "Update configurations from player's config directory");
+        if (!changed.isEmpty()) {
+            val add = git.add();
+            changed.forEach(add::addFilepattern);
+            add.call();
+        }
+        if (!missing.isEmpty()) {
+            val rm = git.rm().setCached(true);
+            missing.forEach(rm::addFilepattern);
+            rm.call();
+        }
+        git.commit()
+                .setMessage("Update configurations from player's config directory")
+                .setAuthor(IDENT)
+                .setCommitter(IDENT)
+                .call();
     }
 
-    private void mergeChanges(File packConfigsDir) throws IOException {
+    private void mergeChanges(Git git, File packConfigsDir) throws IOException, GitAPIException {
         log.info("Merging changes");
-        if (configTag != null) {
-            runCommand("git", "-C", packConfigsDir.getAbsolutePath(), "fetch", "--no-tags", "origin", "tag", configTag);
+        Repository repo = git.getRepository();
+        boolean worktree = !repo.getDirectory().equals(new File(packConfigsDir, Constants.DOT_GIT));
+        if (worktree) {
+            fetchSharedRepository();
         } else {
-            runCommand("git", "-C", packConfigsDir.getAbsolutePath(), "fetch", "--no-tags", "origin", "master");
+            String source = configTag != null ? Constants.R_TAGS + configTag : Constants.R_HEADS + "master";
+            git.fetch()
+                    .setRemote("origin")
+                    .setRefSpecs(new RefSpec("+" + source + ":" + targetRef()))
+                    .setTagOpt(TagOpt.NO_TAGS)
+                    .call();
         }
-        try {
-            // Merge remote changes into local branch
-            runCommand("git", "-C", packConfigsDir.getAbsolutePath(), "merge", "--no-stat", "--no-edit", "-X", "theirs", configTag != null ? configTag : "origin/master");
-        } catch (RuntimeException e) {
-            throw new RuntimeException(String.format("There are conflicts that need to be resolved manually. Please check the repo at [%s]", packConfigsDir.getAbsolutePath()));
-        }
-    }
 
-    private static void runCommand(String... command) throws IOException {
-        log.info("Executing '{}'", String.join(" ", command));
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.inheritIO();
-        Process process = processBuilder.start();
-        try {
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new RuntimeException("Git command failed with exit code " + exitCode);
+        ObjectId target = repo.resolve(targetRef() + "^{commit}");
+        if (target == null) {
+            throw new IOException("Unable to find " + targetRef() + " in " + repo.getDirectory());
+        }
+        ObjectId head = repo.resolve(Constants.HEAD);
+        if (!hasMergeBase(repo, head, target)) {
+            // the shallow history ends before the target forked off what was merged last time
+            if (!worktree) {
+                throw new IOException("No common history between HEAD and " + targetRef() + " in " + repo.getDirectory());
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Interrupted while waiting for Git command to complete", e);
+            unshallowSharedRepository();
+            if (!hasMergeBase(repo, head, target)) {
+                throw new IOException("No common history between HEAD and " + targetRef() + " in " + sharedRepoDir);
+            }
+        }
+
+        // Merge remote changes into local branch, upstream winning where both changed the same lines. The merge is done
+        // in memory, so only config/ is written to the worktree afterwards.
+        val merger = (ResolveMerger) MergeStrategy.RECURSIVE.newMerger(repo, true);
+        merger.setContentMergeStrategy(ContentMergeStrategy.THEIRS);
+        if (merger.merge(head, target)) {
+            commitMerge(repo, head, target, merger.getResultTreeId());
+            checkoutConfigDir(git, head);
+            return;
+        }
+
+        // let git write the conflicts to the worktree, so they can be resolved there
+        MergeResult result = git.merge()
+                .include(configTag != null ? configTag : "origin/master", target)
+                .setContentMergeStrategy(ContentMergeStrategy.THEIRS)
+                .setCommit(true)
+                .call();
+        if (result.getMergeStatus().isSuccessful()) {
+            return;
+        }
+
+        Map<String, String> paths = new TreeMap<>();
+        if (result.getConflicts() != null) {
+            result.getConflicts().keySet().forEach(path -> paths.put(path, "conflict"));
+        }
+        if (result.getFailingPaths() != null) {
+            result.getFailingPaths().forEach((path, reason) -> paths.put(path, reason.name().toLowerCase(Locale.ROOT)));
+        }
+        if (result.getCheckoutConflicts() != null) {
+            result.getCheckoutConflicts().forEach(path -> paths.put(path, "checkout conflict"));
         }
+        paths.forEach((path, reason) -> log.error("\t{}: {}", path, reason));
+        throw new MergeConflictException(packConfigsDir, paths);
     }
 }
@@ -0,0 +1,254 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Content-addressed storage for cached files.
+ * <p>
+ * Objects live at {@code <root>/<first two hex chars>/<sha256>}. The per-mod cache entries stay where they always were,
+ * but are hard links to their object, with a {@code .sha256} record next to them holding the hash, size and the
+ * modification time the entry had when it was last verified.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class ContentStore {
+    static final String RECORD_EXTENSION = ".sha256";
+
+    private final Path root;
+
+    ContentStore(Path root) {
+        this.root = root;
+    }
+
+    record Record(String sha256, long size, long verifiedModifiedTime) {
+    }
+
+    /**
+     * Checks a cached entry against its record, re-hashing it only if its size or modification time changed.
+     * Entries cached before the store existed are adopted. Invalid entries are deleted.
+     *
+     * @param expectedSha256 checksum published for the file, or null if unknown
+     */
+    boolean verify(Path entry, String expectedSha256) throws IOException {
+        if (Files.notExists(entry)) {
+            return false;
+        }
+
+        val record = readRecord(entry);
+        if (record == null) {
+            return adopt(entry, expectedSha256);
+        }
+
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(record.sha256())) {
+            log.warn("\t\t{} does not match the published checksum", entry.getFileName());
+            discard(entry);
+            return false;
+        }
+
+        val attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+        if (attributes.size() == record.size() && attributes.lastModifiedTime().toMillis() == record.verifiedModifiedTime()) {
+            return true;
+        }
+
+        if (attributes.size() != record.size() || !hash(entry).equals(record.sha256())) {
+            log.warn("\t\t{} is corrupt", entry.getFileName());
+            discard(entry);
+            return false;
+        }
+
+        writeRecord(entry, new Record(record.sha256(), attributes.size(), attributes.lastModifiedTime().toMillis()));
+        return true;
+    }
+
+    /**
+     * Verifies a freshly written entry, moves its content into the store and replaces it with a link to the stored object.
+     * Invalid entries are deleted.
+     *
+     * @param expectedSha256 checksum published for the file, or null if unknown
+     */
+    boolean adopt(Path entry, String expectedSha256) throws IOException {
+        val sha256 = hash(entry);
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+            log.warn("\t\t{} does not match the published checksum", entry.getFileName());
+            discard(entry);
+            return false;
+        }
+
+        if (!isReadableArchive(entry)) {
+            log.warn("\t\t{} is not a readable archive", entry.getFileName());
+            discard(entry);
+            return false;
+        }
+
+        val object = objectPath(sha256);
+        Files.createDirectories(object.getParent());
+        // objects only ever appear under their name complete and hashed, so only a changed size needs replacing
+        if (Files.exists(object) && Files.size(object) != Files.size(entry)) {
+            log.warn("\t\tReplacing corrupt store object {}", object.getFileName());
+            Files.delete(object);
+        }
+
+        if (Files.notExists(object)) {
+            try {
+                Files.createLink(object, entry);
+            } catch (FileAlreadyExistsException e) {
+                // stored concurrently by another mod with the same content
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                copyAtomically(entry, object);
+            }
+        }
+
+        if (!Files.isSameFile(object, entry)) {
+            link(object, entry);
+        }
+
+        val attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+        writeRecord(entry, new Record(sha256, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        return true;
+    }
+
+    /**
+     * Deletes every stored object no entry below {@code entriesDir} points to.
+     */
+    void removeUnreferenced(Path entriesDir) throws IOException {
+        if (Files.notExists(root)) {
+            return;
+        }
+
+        val referenced = new HashSet<String>();
+        try (val paths = Files.walk(entriesDir)) {
+            for (val path : (Iterable<Path>) paths::iterator) {
+                if (isRecord(path)) {
+                    val record = parseRecord(path);
+                    if (record != null) {
+                        referenced.add(record.sha256());
+                    }
+                }
+            }
+        }
+
+        try (val paths = Files.walk(root, 2)) {
+            for (val path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                if (!referenced.contains(path.getFileName().toString())) {
+                    log.info("\tRemoving unreferenced store object {}", path.getFileName());
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    static boolean isRecord(Path path) {
+        return path.getFileName().toString().endsWith(RECORD_EXTENSION);
+    }
+
+    private static void deleteRecord(Path entry) throws IOException {
+        Files.deleteIfExists(recordPath(entry));
+    }
+
+    static String hash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (val in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Path objectPath(String sha256) {
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private static Path recordPath(Path entry) {
+        return entry.resolveSibling(entry.getFileName() + RECORD_EXTENSION);
+    }
+
+    private static Record readRecord(Path entry) throws IOException {
+        return parseRecord(recordPath(entry));
+    }
+
+    private static Record parseRecord(Path recordPath) throws IOException {
+        if (Files.notExists(recordPath)) {
+            return null;
+        }
+        val split = Files.readString(recordPath).trim().split(" ");
+        if (split.length != 3) {
+            return null;
+        }
+        try {
+            return new Record(split[0], Long.parseLong(split[1]), Long.parseLong(split[2]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writeRecord(Path entry, Record record) throws IOException {
+        val recordPath = recordPath(entry);
+        val temp = recordPath.resolveSibling(recordPath.getFileName() + ".tmp");
+        Files.writeString(temp, String.format("%s %d %d%n", record.sha256(), record.size(), record.verifiedModifiedTime()));
+        AtomicFiles.move(temp, recordPath);
+    }
+
+    private static void discard(Path entry) throws IOException {
+        Files.deleteIfExists(entry);
+        deleteRecord(entry);
+    }
+
+    private static boolean isReadableArchive(Path path) throws IOException {
+        val name = path.getFileName().toString();
+        if (!(name.endsWith(".jar") || name.endsWith(".zip"))) {
+            return true;
+        }
+        try (val ignored = new ZipFile(path.toFile())) {
+            return true;
+        } catch (ZipException e) {
+            return false;
+        }
+    }
+
+    private static void link(Path object, Path entry) throws IOException {
+        val temp = entry.resolveSibling(entry.getFileName() + ".link");
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, object);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // no hard links on this filesystem; keep the entry as a plain copy
+            Files.deleteIfExists(temp);
+            return;
+        }
+        AtomicFiles.move(temp, entry);
+    }
+
+    private static void copyAtomically(Path source, Path target) throws IOException {
+        // unique, the same content can be stored by several downloads at once
+        val temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            AtomicFiles.move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.Tasks;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes a directory tree an exact copy of another one, touching only what differs, like {@code rsync -a --delete}.
+ * <p>
+ * Files are considered unchanged when size and modification time match. When only the modification time differs, as
+ * it does after a git checkout, the contents are compared and an identical file just gets its time set, so the next
+ * sync skips it without reading it. Copies keep the modification time of the source for the same reason.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+class DirectorySync {
+    private final int threads;
+
+    /**
+     * @param copied  files copied, relative to the target
+     * @param deleted files deleted, relative to the target
+     */
+    record Result(List<Path> copied, List<Path> deleted, int unchanged) {
+    }
+
+    /**
+     * @param threads how many files are compared, copied or deleted at once
+     */
+    DirectorySync(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    Result sync(Path source, Path target) throws IOException, InterruptedException {
+        log.debug("Syncing [{}] to [{}]", source, target);
+        val sourceEntries = list(source);
+        val targetEntries = Files.exists(target) ? list(target) : new TreeMap<Path, BasicFileAttributes>();
+
+        // anything of the wrong type is in the way, a directory where a file goes or the other way round
+        val deleted = new ConcurrentLinkedQueue<Path>();
+        for (val entry : sourceEntries.entrySet()) {
+            val existing = targetEntries.get(entry.getKey());
+            if (existing != null && existing.isDirectory() != entry.getValue().isDirectory()) {
+                delete(target.resolve(entry.getKey()));
+                targetEntries.entrySet().removeIf(removed -> {
+                    if (!removed.getKey().startsWith(entry.getKey())) {
+                        return false;
+                    }
+                    if (!removed.getValue().isDirectory()) {
+                        deleted.add(removed.getKey());
+                    }
+                    return true;
+                });
+            }
+        }
+
+        Files.createDirectories(target);
+        for (val entry : sourceEntries.entrySet()) {
+            if (entry.getValue().isDirectory()) {
+                Files.createDirectories(target.resolve(entry.getKey()));
+            }
+        }
+
+        val permits = new Semaphore(threads);
+        val copied = new ConcurrentLinkedQueue<Path>();
+        val unchanged = new AtomicInteger();
+        val tasks = new ArrayList<Callable<Void>>();
+        for (val entry : sourceEntries.entrySet()) {
+            if (entry.getValue().isDirectory()) {
+                continue;
+            }
+            val from = source.resolve(entry.getKey());
+            val to = target.resolve(entry.getKey());
+            val sourceAttributes = entry.getValue();
+            val targetAttributes = targetEntries.get(entry.getKey());
+            if (targetAttributes != null && targetAttributes.size() == sourceAttributes.size()
+                    && targetAttributes.lastModifiedTime().equals(sourceAttributes.lastModifiedTime())) {
+                unchanged.incrementAndGet();
+                continue;
+            }
+            tasks.add(() -> {
+                permits.acquire();
+                try {
+                    if (targetAttributes != null && targetAttributes.size() == sourceAttributes.size()
+                            && ContentStore.hash(from).equals(ContentStore.hash(to))) {
+                        Files.setLastModifiedTime(to, sourceAttributes.lastModifiedTime());
+                        unchanged.incrementAndGet();
+                    } else {
+                        Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                        // the copied time can be truncated to microseconds, which would fail the quick check next time
+                        Files.setLastModifiedTime(to, sourceAttributes.lastModifiedTime());
+                        copied.add(entry.getKey());
+                    }
+                } finally {
+                    permits.release();
+                }
+                return null;
+            });
+        }
+
+        val removedDirectories = new ArrayList<Path>();
+        for (val entry : targetEntries.entrySet()) {
+            if (sourceEntries.containsKey(entry.getKey())) {
+                continue;
+            }
+            if (entry.getValue().isDirectory()) {
+                removedDirectories.add(target.resolve(entry.getKey()));
+                continue;
+            }
+            val path = target.resolve(entry.getKey());
+            tasks.add(() -> {
+                permits.acquire();
+                try {
+                    Files.deleteIfExists(path);
+                    deleted.add(entry.getKey());
+                } finally {
+                    permits.release();
+                }
+                return null;
+            });
+        }
+        Tasks.runAll(tasks);
+
+        // deepest first, their files are gone by now
+        removedDirectories.sort(Comparator.reverseOrder());
+        for (val directory : removedDirectories) {
+            Files.deleteIfExists(directory);
+        }
+
+        return new Result(List.copyOf(copied), List.copyOf(deleted), unchanged.get());
+    }
+
+    /**
+     * @return every file and directory below {@code root} by path relative to it
+     */
+    private static Map<Path, BasicFileAttributes> list(Path root) throws IOException {
+        val entries = new TreeMap<Path, BasicFileAttributes>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root)) {
+                    entries.put(root.relativize(dir), attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                entries.put(root.relativize(file), attrs);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        try (val paths = Files.walk(path)) {
+            for (val child : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(child);
+            }
+        }
+    }
+}
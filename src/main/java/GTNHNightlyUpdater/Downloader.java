@@ -0,0 +1,251 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class Downloader implements AutoCloseable {
+    static final Map<String, Integer> DEFAULT_HOST_LIMITS = Map.of(
+            "nexus.gtnewhorizons.com", 4,
+            "github.com", 8
+    );
+    // Content-Range: bytes <start>-<end>/<size>, or bytes */<size> on a 416
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (?:(\\d+)-(\\d+)|\\*)/(\\d+|\\*)");
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final Transport transport;
+    private final int parallelism;
+    private final int retries;
+    private final Semaphore permits;
+    private final Map<String, Integer> hostLimits = new HashMap<>(DEFAULT_HOST_LIMITS);
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final String mirror;
+
+    /**
+     * @param transport closed along with the downloader
+     * @param mirror    base url of a {@link MirrorServer} every download goes through, or null to download directly
+     */
+    Downloader(Transport transport, int parallelism, Map<String, Integer> hostLimits, int retries, String mirror) {
+        this.transport = transport;
+        this.parallelism = Math.max(1, parallelism);
+        this.retries = Math.max(0, retries);
+        this.mirror = mirror != null ? mirror.replaceAll("/+$", "") : null;
+        this.permits = new Semaphore(this.parallelism, true);
+        if (hostLimits != null) {
+            this.hostLimits.putAll(hostLimits);
+        }
+    }
+
+    private enum Outcome {
+        COMPLETE,
+        MISSING,
+        RETRY
+    }
+
+    private record Attempt(Outcome outcome, long retryAfterMillis) {
+    }
+
+    /**
+     * Streams {@code downloadURL} into a {@code .part} file next to {@code target} and moves it into place once complete,
+     * so a partially written file is never mistaken for a cached one.
+     * <p>
+     * Failed attempts are retried with exponential backoff, continuing from whatever is already in the {@code .part} file.
+     *
+     * @return false if the server did not answer with the file
+     */
+    boolean download(String downloadURL, Path target) throws IOException, InterruptedException {
+        val uri = resolve(downloadURL);
+        val partPath = partPath(target);
+        for (int attempt = 0; ; attempt++) {
+            Attempt result;
+            Metrics.request(uri.getHost());
+            try {
+                result = withPermits(uri, () -> send(uri, partPath));
+            } catch (IOException e) {
+                log.debug("Request for {} failed", downloadURL, e);
+                result = new Attempt(Outcome.RETRY, -1);
+            }
+
+            val outcome = result.outcome();
+            if (outcome == Outcome.COMPLETE) {
+                AtomicFiles.move(partPath, target);
+                return true;
+            }
+            if (outcome == Outcome.MISSING) {
+                return false;
+            }
+            if (attempt >= retries) {
+                log.warn("\tGiving up on {} after {} attempts", downloadURL, attempt + 1);
+                Metrics.failure(uri.getHost());
+                return false;
+            }
+            Metrics.retry(uri.getHost());
+
+            val delay = result.retryAfterMillis() > 0 ? Math.min(result.retryAfterMillis(), MAX_BACKOFF_MILLIS) : backoff(attempt);
+            log.info("\tRetrying {} in {} ms", downloadURL, delay);
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Asks the server for the size of a file without downloading it.
+     *
+     * @return the size in bytes, 0 if the server doesn't say, or -1 if the server does not have the file
+     */
+    long size(String downloadURL) throws IOException, InterruptedException {
+        val uri = resolve(downloadURL);
+        val request = HttpRequest.newBuilder()
+                .uri(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        Metrics.request(uri.getHost());
+        val response = withPermits(uri, () -> transport.send(request, HttpResponse.BodyHandlers.discarding()));
+        if (response.statusCode() != 200) {
+            log.debug("HTTP {} for {}", response.statusCode(), uri);
+            return -1;
+        }
+        return response.headers().firstValueAsLong("Content-Length").orElse(0);
+    }
+
+    private URI resolve(String downloadURL) {
+        if (mirror == null) {
+            return URI.create(downloadURL);
+        }
+        return URI.create(mirror + "/fetch?url=" + URLEncoder.encode(downloadURL, StandardCharsets.UTF_8));
+    }
+
+    private Attempt send(URI uri, Path partPath) throws IOException, InterruptedException {
+        val resumeFrom = Files.exists(partPath) ? Files.size(partPath) : 0;
+        val request = HttpRequest.newBuilder()
+                .uri(uri)
+                .GET();
+        if (resumeFrom > 0) {
+            request.header("Range", "bytes=" + resumeFrom + "-");
+        }
+
+        val response = transport.send(request.build(), responseInfo -> switch (responseInfo.statusCode()) {
+            case 200 -> HttpResponse.BodySubscribers.ofFile(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            case 206 -> resumeFrom == rangeStart(responseInfo.headers())
+                    ? HttpResponse.BodySubscribers.ofFile(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                    : HttpResponse.BodySubscribers.replacing(null);
+            default -> HttpResponse.BodySubscribers.replacing(null);
+        });
+
+        val statusCode = response.statusCode();
+        if ((statusCode == 200 || statusCode == 206) && Files.exists(partPath)) {
+            Metrics.received(uri.getHost(), Files.size(partPath) - (statusCode == 206 ? resumeFrom : 0));
+        }
+        if (statusCode != 200 && statusCode != 206) {
+            log.debug("HTTP {} for {}", statusCode, uri);
+        }
+
+        if (statusCode == 416 && resumeFrom > 0 && resumeFrom == rangeSize(response.headers())) {
+            // the previous attempt got everything but didn't get to move the file
+            return new Attempt(Outcome.COMPLETE, -1);
+        }
+        if (statusCode == 416 || (statusCode == 206 && resumeFrom != rangeStart(response.headers()))) {
+            // the partial file doesn't line up with what the server has; start over
+            Files.deleteIfExists(partPath);
+            return new Attempt(Outcome.RETRY, 0);
+        }
+
+        return switch (statusCode) {
+            case 200, 206 -> new Attempt(Outcome.COMPLETE, -1);
+            case 408 -> new Attempt(Outcome.RETRY, -1);
+            case 429, 503 -> new Attempt(Outcome.RETRY, retryAfterMillis(response.headers()));
+            default -> new Attempt(statusCode >= 500 ? Outcome.RETRY : Outcome.MISSING, -1);
+        };
+    }
+
+    /**
+     * @return the delay a Retry-After header asks for, given in seconds or as an HTTP-date, or -1 if there is none or
+     * it can't be read
+     */
+    static long retryAfterMillis(HttpHeaders headers) {
+        val value = headers.firstValue("Retry-After").map(String::trim).orElse("");
+        if (value.matches("\\d+")) {
+            try {
+                return Long.parseLong(value) * 1000;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        try {
+            val date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(Instant.now(), date.toInstant()).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static long rangeStart(HttpHeaders headers) {
+        val matcher = CONTENT_RANGE.matcher(headers.firstValue("Content-Range").orElse(""));
+        return matcher.matches() && matcher.group(1) != null ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private static long rangeSize(HttpHeaders headers) {
+        val matcher = CONTENT_RANGE.matcher(headers.firstValue("Content-Range").orElse(""));
+        return matcher.matches() && !matcher.group(3).equals("*") ? Long.parseLong(matcher.group(3)) : -1;
+    }
+
+    private static long backoff(int attempt) {
+        val delay = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt, 16));
+        // equal jitter, so retries from concurrent downloads don't line up
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private <T> T withPermits(URI uri, Request<T> request) throws IOException, InterruptedException {
+        // take the host permit first so a saturated host doesn't hold on to global permits
+        val hostPermit = hostPermits.computeIfAbsent(uri.getHost(), host -> new Semaphore(Math.max(1, Math.min(parallelism, hostLimits.getOrDefault(host, parallelism))), true));
+        hostPermit.acquire();
+        try {
+            permits.acquire();
+            try {
+                return request.send();
+            } finally {
+                permits.release();
+            }
+        } finally {
+            hostPermit.release();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request<T> {
+        T send() throws IOException, InterruptedException;
+    }
+
+    static Path partPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+}
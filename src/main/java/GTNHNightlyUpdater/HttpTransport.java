@@ -0,0 +1,88 @@
+package GTNHNightlyUpdater;
+
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link Transport} over {@link HttpClient}. Requests for a host that has an upstream configured are sent to that base
+ * url instead, keeping their path and query, e.g. to run against a local mock of nexus and GitHub.
+ * <p>
+ * Redirects are followed here rather than by the client, so every hop is rewritten too: GitHub release downloads
+ * redirect to another host, which a mock has to stand in for as well.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class HttpTransport implements Transport {
+    // as many as HttpClient follows by default
+    private static final int MAX_REDIRECTS = 5;
+    private static final Set<Integer> REDIRECTS = Set.of(301, 302, 303, 307, 308);
+
+    private final HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+    private final Map<String, URI> upstreams = new HashMap<>();
+
+    HttpTransport(Map<String, String> upstreams) {
+        if (upstreams != null) {
+            upstreams.forEach((host, url) -> this.upstreams.put(host, URI.create(url.replaceAll("/+$", ""))));
+        }
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        // the body of a redirect is dropped, so it never reaches e.g. a file the handler writes to
+        HttpResponse.BodyHandler<T> handler = info -> isRedirect(info.statusCode(), info.headers().firstValue("Location").isPresent())
+                ? HttpResponse.BodySubscribers.replacing(null)
+                : bodyHandler.apply(info);
+        var current = request;
+        for (int redirects = 0; ; redirects++) {
+            val response = client.send(rewrite(current), handler);
+            val location = response.headers().firstValue("Location");
+            if (!isRedirect(response.statusCode(), location.isPresent())) {
+                return response;
+            }
+            if (redirects >= MAX_REDIRECTS) {
+                throw new IOException("Too many redirects for " + request.uri());
+            }
+
+            // relative to the url asked for, so a mock standing in for a host also stands in for its relative redirects
+            val next = current.uri().resolve(location.get());
+            if (current.uri().getScheme().equalsIgnoreCase("https") && !next.getScheme().equalsIgnoreCase("https")) {
+                // like HttpClient.Redirect.NORMAL, never from https to http
+                return response;
+            }
+            log.debug("Following redirect from {} to {}", current.uri(), next);
+            val builder = HttpRequest.newBuilder(current, (name, value) -> true).uri(next);
+            if (response.statusCode() == 303 || (response.statusCode() <= 302 && current.method().equals("POST"))) {
+                builder.GET();
+            }
+            current = builder.build();
+        }
+    }
+
+    private static boolean isRedirect(int statusCode, boolean hasLocation) {
+        return REDIRECTS.contains(statusCode) && hasLocation;
+    }
+
+    private HttpRequest rewrite(HttpRequest request) {
+        val uri = request.uri();
+        val upstream = upstreams.get(uri.getHost());
+        if (upstream == null) {
+            return request;
+        }
+        val rewritten = URI.create(upstream + uri.getRawPath() + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : ""));
+        log.debug("Sending {} to {}", uri, rewritten);
+        return HttpRequest.newBuilder(request, (name, value) -> true).uri(rewritten).build();
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
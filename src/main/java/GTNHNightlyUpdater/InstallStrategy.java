@@ -0,0 +1,126 @@
+package GTNHNightlyUpdater;
+
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * How a cached file is put into an instance.
+ * <p>
+ * {@link #HARDLINK} and {@link #REFLINK} share the cached content instead of duplicating it and fall back to a copy
+ * where the filesystem can't do that, e.g. when the instance is on a different disk than the cache.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public enum InstallStrategy {
+    COPY,
+    SYMLINK,
+    HARDLINK,
+    REFLINK;
+
+    // whether each filesystem can clone files, probed once per run
+    private static final Map<FileStore, Boolean> REFLINK_SUPPORTED = new HashMap<>();
+
+    /**
+     * Installs {@code source} as {@code target}, replacing whatever is there.
+     */
+    void install(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        switch (this) {
+            case COPY -> Files.copy(source, target);
+            case SYMLINK -> Files.createSymbolicLink(target, source);
+            case HARDLINK -> {
+                try {
+                    Files.createLink(target, source);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    log.debug("Unable to hard link {}, copying it instead", target, e);
+                    Files.copy(source, target);
+                }
+            }
+            case REFLINK -> {
+                if (!reflink(source, target)) {
+                    Files.deleteIfExists(target);
+                    Files.copy(source, target);
+                }
+            }
+        }
+    }
+
+    private static boolean reflink(Path source, Path target) throws IOException {
+        // clones can't cross filesystems, which says nothing about whether this one supports them
+        if (!Files.getFileStore(source).equals(Files.getFileStore(target.getParent())) || !supportsReflink(target.getParent())) {
+            return false;
+        }
+        val error = cloneFile(source, target);
+        if (error != null) {
+            // e.g. permissions or a missing file, the filesystem itself can clone
+            log.debug("Unable to clone {}, copying it instead: {}", target, error);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Clones a scratch file in {@code directory} the first time its filesystem is asked about, so filesystems that
+     * can't clone never start a process per file.
+     */
+    static boolean supportsReflink(Path directory) throws IOException {
+        val fileStore = Files.getFileStore(directory);
+        synchronized (REFLINK_SUPPORTED) {
+            val known = REFLINK_SUPPORTED.get(fileStore);
+            if (known != null) {
+                return known;
+            }
+            val probe = Files.createTempFile(directory, ".reflink-probe", ".tmp");
+            val clone = probe.resolveSibling(probe.getFileName() + ".clone");
+            boolean supported;
+            try {
+                Files.writeString(probe, "probe");
+                supported = cloneFile(probe, clone) == null;
+            } finally {
+                Files.deleteIfExists(clone);
+                Files.deleteIfExists(probe);
+            }
+            if (!supported) {
+                log.info("	{} does not support reflinks, copying instead", fileStore);
+            }
+            REFLINK_SUPPORTED.put(fileStore, supported);
+            return supported;
+        }
+    }
+
+    /**
+     * Java 21 has no way to clone a file: the FICLONE ioctl and clonefile(2) are only reachable through the foreign
+     * function API, which is a preview there. cp does it instead, one process per file.
+     *
+     * @return null once cloned, otherwise why not
+     */
+    private static String cloneFile(Path source, Path target) throws IOException {
+        val osName = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        String[] command;
+        if (osName.contains("linux")) {
+            command = new String[]{"cp", "--reflink=always", source.toString(), target.toString()};
+        } else if (osName.contains("mac")) {
+            command = new String[]{"cp", "-c", source.toString(), target.toString()};
+        } else {
+            return "not supported on " + osName;
+        }
+
+        try {
+            val process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            val error = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return process.waitFor() == 0 ? null : error;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning " + source, e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import com.google.gson.JsonParseException;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What the last update applied to an instance, stored in the instance directory.
+ * <p>
+ * An update is skipped while the nightly, the desired hash and the jars in the mods directory, by name and size, are the
+ * recorded ones. Any difference, even a single jar, has the reconciler plan the whole instance again rather than just
+ * the difference; that only reads jars the {@link JarIndex} hasn't seen, so it costs little more than a listing.
+ *
+ * @param desiredHash hash of everything the reconciler decides on, see {@link #desiredHash}
+ * @param installed   size of each jar in the mods directory after the update, by file name
+ */
+public record InstanceState(int nightly, String desiredHash, Map<String, Long> installed) {
+    static final String FILE_NAME = ".updater_state.json";
+
+    /**
+     * @return null if there is no usable state
+     */
+    static InstanceState read(Path minecraftDir) throws IOException {
+        val path = minecraftDir.resolve(FILE_NAME);
+        if (Files.notExists(path)) {
+            return null;
+        }
+        try {
+            val state = JsonParser.parse(Files.readString(path), InstanceState.class);
+            return state != null && state.desiredHash() != null && state.installed() != null ? state : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    void write(Path minecraftDir) throws IOException {
+        val path = minecraftDir.resolve(FILE_NAME);
+        val temp = path.resolveSibling(FILE_NAME + ".tmp");
+        Files.writeString(temp, JsonParser.toJson(this));
+        AtomicFiles.move(temp, path);
+    }
+
+    static void delete(Path minecraftDir) throws IOException {
+        Files.deleteIfExists(minecraftDir.resolve(FILE_NAME));
+    }
+
+    /**
+     * @param installed the jars in the mods directory now, see {@link #installedJars}
+     */
+    boolean isCurrent(int nightly, String desiredHash, Map<String, Long> installed) {
+        return this.nightly == nightly && this.desiredHash.equals(desiredHash) && this.installed.equals(installed);
+    }
+
+    /**
+     * @return size of each jar in {@code minecraftModsDir}, by file name
+     */
+    static Map<String, Long> installedJars(Path minecraftModsDir) throws IOException {
+        val jars = new TreeMap<String, Long>();
+        try (val paths = Files.list(minecraftModsDir)) {
+            for (val path : (Iterable<Path>) paths::iterator) {
+                if (path.toString().endsWith(".jar") && Files.isRegularFile(path)) {
+                    jars.put(path.getFileName().toString(), Files.size(path));
+                }
+            }
+        }
+        return jars;
+    }
+
+    /**
+     * Hashes the mods, versions, sides and exclusions the reconciler works from, and how jars are installed, so a change
+     * to any of them is noticed even when the nightly number stays the same, e.g. with --get-latest or local assets.
+     */
+    static String desiredHash(Assets.Asset assets, Set<String> modExclusions, Main.Options.Instance.InstanceConfig.Side side, InstallStrategy installStrategy) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, String.valueOf(side));
+        update(digest, String.valueOf(installStrategy));
+        for (val exclusion : new TreeSet<>(modExclusions)) {
+            update(digest, exclusion);
+        }
+        val mods = assets.getMods().stream()
+                .sorted(Comparator.comparing(Assets.Mod::getName))
+                .toList();
+        for (val mod : mods) {
+            update(digest, mod.getName());
+            update(digest, mod.getSide());
+            val version = mod.getLatest();
+            update(digest, version != null ? version.getVersion() : null);
+            update(digest, version != null && version.getCachePath() != null ? version.getCachePath().toString() : null);
+            update(digest, String.join("\n", new TreeSet<>(mod.getOtherFileNames(version))));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
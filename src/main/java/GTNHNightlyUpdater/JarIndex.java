@@ -0,0 +1,181 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import GTNHNightlyUpdater.Utils.Tasks;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * What is inside the jars the updater has looked at, so installed mods can be recognised by content instead of by
+ * file name. Stored in the cache directory as {@code jar-index.json}.
+ * <p>
+ * Entries are keyed by path and only trusted while size and modification time are the recorded ones, so a scan reads
+ * only new or changed jars.
+ * <p>
+ * One index is shared by all instances updated at once: entries are kept in a concurrent map and {@link #save} is
+ * serialized. Entries of jars that are gone are only dropped when the index is loaded, a save while another instance
+ * has its mods directory swapped out would otherwise drop all of that instance's entries.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+class JarIndex {
+    static final String FILE_NAME = "jar-index.json";
+
+    private final Path path;
+    private final int threads;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param modIds  modids from mcmod.info, empty if it has none or can't be read
+     * @param version version of the first mod in mcmod.info, or null
+     */
+    record Jar(String sha256, List<String> modIds, String version) {
+    }
+
+    private record Entry(long size, long modified, Jar jar) {
+    }
+
+    /**
+     * @param threads how many jars are read at once
+     */
+    JarIndex(Path cacheDir, int threads) throws IOException {
+        this.path = cacheDir.resolve(FILE_NAME);
+        this.threads = Math.max(1, threads);
+        if (Files.exists(path)) {
+            try {
+                Map<String, Entry> stored = JsonParser.parse(Files.readString(path), new TypeToken<Map<String, Entry>>() {
+                }.getType());
+                if (stored != null) {
+                    stored.forEach((key, entry) -> {
+                        // jars that are gone would otherwise be kept forever
+                        if (entry != null && entry.jar() != null && entry.jar().sha256() != null && Files.exists(Path.of(key))) {
+                            entries.put(key, entry);
+                        }
+                    });
+                }
+            } catch (JsonParseException e) {
+                log.warn("Ignoring unreadable {}", path);
+            }
+        }
+    }
+
+    /**
+     * Reads the jars not indexed yet or changed since, and saves the index if any were.
+     *
+     * @return what is inside each of {@code jars} that exists
+     */
+    Map<Path, Jar> identify(Collection<Path> jars) throws IOException, InterruptedException {
+        return identify(jars, true);
+    }
+
+    /**
+     * @param save whether jars read now are written to {@code jar-index.json}, a dry run leaves it alone
+     */
+    Map<Path, Jar> identify(Collection<Path> jars, boolean save) throws IOException, InterruptedException {
+        val result = new ConcurrentHashMap<Path, Jar>();
+        val permits = new Semaphore(threads);
+        val tasks = new ArrayList<Callable<Void>>();
+        for (val jar : jars) {
+            val key = jar.toAbsolutePath().normalize().toString();
+            if (Files.notExists(jar)) {
+                continue;
+            }
+            val size = Files.size(jar);
+            val modified = Files.getLastModifiedTime(jar).toMillis();
+            val entry = entries.get(key);
+            if (entry != null && entry.size() == size && entry.modified() == modified) {
+                result.put(jar, entry.jar());
+                continue;
+            }
+            tasks.add(() -> {
+                permits.acquire();
+                try {
+                    val read = read(jar);
+                    entries.put(key, new Entry(size, modified, read));
+                    result.put(jar, read);
+                } finally {
+                    permits.release();
+                }
+                return null;
+            });
+        }
+        Tasks.runAll(tasks);
+
+        if (!tasks.isEmpty()) {
+            log.debug("Indexed {} jars", tasks.size());
+            if (save) {
+                save();
+            }
+        }
+        return result;
+    }
+
+    private synchronized void save() throws IOException {
+        val temp = path.resolveSibling(FILE_NAME + ".tmp");
+        Files.writeString(temp, JsonParser.toJson(new TreeMap<>(entries)));
+        AtomicFiles.move(temp, path);
+    }
+
+    private static Jar read(Path jar) throws IOException {
+        val sha256 = ContentStore.hash(jar);
+        val modIds = new ArrayList<String>();
+        String version = null;
+        try (val zip = new ZipFile(jar.toFile())) {
+            val info = zip.getEntry("mcmod.info");
+            if (info != null) {
+                try (val reader = new InputStreamReader(zip.getInputStream(info), StandardCharsets.UTF_8)) {
+                    for (val mod : modList(com.google.gson.JsonParser.parseReader(reader))) {
+                        if (!mod.isJsonObject()) {
+                            continue;
+                        }
+                        val modId = mod.getAsJsonObject().get("modid");
+                        if (modId != null && modId.isJsonPrimitive()) {
+                            modIds.add(modId.getAsString());
+                        }
+                        val modVersion = mod.getAsJsonObject().get("version");
+                        if (version == null && modVersion != null && modVersion.isJsonPrimitive()) {
+                            version = modVersion.getAsString();
+                        }
+                    }
+                } catch (JsonParseException | IllegalStateException e) {
+                    log.debug("Unreadable mcmod.info in {}: {}", jar.getFileName(), e.getMessage());
+                }
+            }
+        } catch (ZipException e) {
+            log.debug("{} is not a jar: {}", jar.getFileName(), e.getMessage());
+        }
+        return new Jar(sha256, List.copyOf(modIds), version);
+    }
+
+    /**
+     * @return the mods of an mcmod.info, which is either a list of them or an object holding the list in modList
+     */
+    private static JsonArray modList(JsonElement info) {
+        if (info.isJsonArray()) {
+            return info.getAsJsonArray();
+        }
+        if (info.isJsonObject() && info.getAsJsonObject().has("modList") && info.getAsJsonObject().get("modList").isJsonArray()) {
+            return info.getAsJsonObject().getAsJsonArray("modList");
+        }
+        return new JsonArray();
+    }
+}
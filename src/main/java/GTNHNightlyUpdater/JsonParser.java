@@ -3,9 +3,26 @@ package GTNHNightlyUpdater;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.Reader;
+import java.lang.reflect.Type;
+
 public class JsonParser {
+    // Gson instances are immutable and thread-safe
+    private static final Gson GSON = new GsonBuilder().create();
+
     public static <T> T parse(String json, Class<T> clazz) {
-        Gson gson = new GsonBuilder().create();
-        return gson.fromJson(json, clazz);
+        return GSON.fromJson(json, clazz);
+    }
+
+    public static <T> T parse(String json, Type type) {
+        return GSON.fromJson(json, type);
+    }
+
+    public static <T> T parse(Reader json, Class<T> clazz) {
+        return GSON.fromJson(json, clazz);
+    }
+
+    public static String toJson(Object object) {
+        return GSON.toJson(object);
     }
 }
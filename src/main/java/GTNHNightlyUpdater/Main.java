@@ -1,41 +1,131 @@
 package GTNHNightlyUpdater;
 
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Utils.Tasks;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.extern.log4j.Log4j2;
 import lombok.val;
+import org.apache.logging.log4j.ThreadContext;
 import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 
 @Log4j2(topic = "GTNHNightlyUpdater-Main")
 public class Main {
     public static void main(String[] args) {
         val options = new Options();
         try {
-            new CommandLine(options)
-                    .setCaseInsensitiveEnumValuesAllowed(true)
-                    .parseArgs(args);
+            val commandLine = new CommandLine(options)
+                    .setCaseInsensitiveEnumValuesAllowed(true);
+            commandLine.parseArgs(args);
+            if (options.instances == null) {
+                options.instances = new ArrayList<>();
+            }
+            if (options.instances.isEmpty() && options.servePort == 0) {
+                throw new CommandLine.ParameterException(commandLine, "Missing required instance: '--add --minecraft=<minecraftDir> --side=<side>'");
+            }
+
+            if (options.rollback) {
+                forEachInstance(options, instanceConfig -> {
+                    val modsDir = instanceConfig.minecraftDir.resolve("mods");
+                    if (ModsTransaction.rollback(modsDir)) {
+                        InstanceState.delete(instanceConfig.minecraftDir);
+                        log.info("Rolled back {}", modsDir);
+                    } else {
+                        log.warn("No previous mods directory to roll back to in {}", instanceConfig.minecraftDir);
+                    }
+                });
+                return;
+            }
 
-            val updater = new Updater(options);
             val cacheDir = getCacheDir().resolve("gtnh-nightly-updater");
             if (Files.notExists(cacheDir)) {
                 Files.createDirectory(cacheDir);
             }
+            val cacheManager = new CacheManager(cacheDir, new CacheManager.Policy(options.cacheMaxSize * 1024 * 1024, Duration.ofDays(options.cacheMaxAge)));
+
+            if (options.cacheGc) {
+                for (val instance : options.instances) {
+                    cacheManager.registerInstance(instance.config.minecraftDir, options.dryRun);
+                }
+                val result = cacheManager.collect(options.dryRun);
+                log.info("Cache is {} bytes, {} bytes in {} files {}", result.totalBytes(), result.reclaimedBytes(), result.removed(), options.dryRun ? "can be reclaimed" : "reclaimed");
+                return;
+            }
+
+            if (options.servePort != 0) {
+                val updater = new Updater(options, cacheDir);
+                val downloader = new Downloader(Transport.http(options.upstreams), options.downloadThreads, options.hostLimits, options.downloadRetries, null);
+                val assetsTtl = options.metadataTtl != 0 ? Duration.ofMinutes(options.metadataTtl) : MirrorServer.DEFAULT_ASSETS_TTL;
+                try (val server = new MirrorServer(updater, cacheDir, downloader, options.serveAllowHosts, options.serveBind, options.servePort, assetsTtl)) {
+                    server.removeStale(Duration.ofDays(options.cacheMaxAge));
+                    server.start();
+                    // serve until the process is stopped
+                    new CountDownLatch(1).await();
+                }
+                return;
+            }
+            if (options.targetManifest == null && options.snapshotFile == null) {
+                throw new CommandLine.ParameterException(commandLine, "Missing required option: '--target-manifest=<targetManifest>'");
+            }
+
+            val updater = new Updater(options, cacheDir);
             val modExclusions = getModExclusions(cacheDir);
 
-            val assets = updater.fetchDAXXLAssets();
+            // a snapshot already has the local assets and --get-latest versions it was saved with
+            val pinned = options.snapshotFile != null || options.offline;
+            Assets.Asset assets;
+            try (val timer = Metrics.time("resolve")) {
+                if (pinned) {
+                    val snapshot = Updater.readSnapshot(options.snapshotFile != null ? options.snapshotFile : updater.latestSnapshotPath(options.targetManifest));
+                    if (options.targetManifest == null) {
+                        options.targetManifest = Options.TargetManifest.valueOf(snapshot.targetManifest());
+                    }
+                    assets = snapshot.toAsset();
+                    log.info("Using nightly {} from the snapshot", assets.getLatestNightly());
+                } else {
+                    assets = updater.fetchDAXXLAssets();
+                }
+            }
+
+            if (options.planFile != null) {
+                if (!pinned && !options.configsOnly && Files.exists(cacheDir.resolve("local-assets.txt"))) {
+                    updater.addLocalAssets(assets, cacheDir.resolve("local-assets.txt"));
+                }
+                if (!pinned && options.getLatestRelease && !options.configsOnly) {
+                    updater.updateModsFromMaven(assets.getMods());
+                }
+                val plan = updater.plan(assets, modExclusions, cacheDir.resolve("mods"));
+                Files.writeString(options.planFile, JsonParser.toJson(plan));
+                log.info("Wrote plan to {}", options.planFile);
+                return;
+            }
 
             if (options.configsOnly) {
-                for (val instance : options.instances) {
-                    log.info("Updating configs for {} with side {}", instance.config.minecraftDir, instance.config.side);
-                    new ConfigUpdater(instance.config.minecraftDir.toFile(), assets.getConfigTag()).run();
+                if (options.dryRun) {
+                    log.info("Dry run, not updating configs");
+                    return;
+                }
+                if (options.offline) {
+                    log.warn("Configs can't be updated offline");
+                    return;
                 }
+                forEachInstance(options, instanceConfig -> {
+                    log.info("Updating configs for {} with side {}", instanceConfig.minecraftDir, instanceConfig.side);
+                    new ConfigUpdater(instanceConfig.minecraftDir.toFile(), cacheDir.toFile(), assets.getConfigTag(), options.configThreads).run();
+                });
                 return;
             }
 
@@ -45,21 +135,37 @@ public class Main {
             if (Files.notExists(modCacheDir)) {
                 Files.createDirectory(modCacheDir);
             }
-            if (Files.exists(localAssets)) {
-                updater.addLocalAssets(assets, localAssets);
-            }
+            if (!pinned) {
+                if (Files.exists(localAssets)) {
+                    updater.addLocalAssets(assets, localAssets);
+                }
 
-            if (options.getLatestRelease) {
-                updater.updateModsFromMaven(assets.getMods());
+                if (options.getLatestRelease) {
+                    updater.updateModsFromMaven(assets.getMods());
+                }
+                if (!options.dryRun) {
+                    updater.saveSnapshot(assets);
+                }
+            }
+            if (options.offline && options.updateConfigs) {
+                log.warn("Configs can't be updated offline, only updating mods");
             }
 
-            updater.cacheMods(assets, modExclusions, modCacheDir);
-            for (val instance : options.instances) {
-                log.info("Updating {} with side {}", instance.config.minecraftDir, instance.config.side);
-                updater.updateModpackMods(assets, modCacheDir, modExclusions, instance.config);
-                if (options.updateConfigs) {
-                    new ConfigUpdater(instance.config.minecraftDir.toFile(), assets.getConfigTag()).run();
+            if (!options.dryRun) {
+                for (val instance : options.instances) {
+                    cacheManager.registerInstance(instance.config.minecraftDir, false);
+                }
+            }
+            updater.cacheMods(assets, modExclusions, modCacheDir, cacheManager);
+            forEachInstance(options, instanceConfig -> {
+                log.info("Updating {} with side {}", instanceConfig.minecraftDir, instanceConfig.side);
+                updater.updateModpackMods(assets, modCacheDir, modExclusions, instanceConfig);
+                if (options.updateConfigs && !options.dryRun && !options.offline) {
+                    new ConfigUpdater(instanceConfig.minecraftDir.toFile(), cacheDir.toFile(), assets.getConfigTag(), options.configThreads).run();
                 }
+            });
+            if (!options.dryRun) {
+                cacheManager.collect(false);
             }
         } catch (CommandLine.ParameterException e) {
             log.fatal("Parsing fatal: {}", e.getMessage());
@@ -67,16 +173,64 @@ public class Main {
             System.exit(2);
         } catch (Exception e) {
             log.fatal("Fataled", e);
+            writeMetrics(options, false);
             System.out.println("Closing in 10 seconds");
             try {
                 Thread.sleep(10000);
             } catch (InterruptedException ignored) {
             }
             System.exit(1);
+        } finally {
+            // both catch blocks exit, so this is only reached by runs that succeeded
+            writeMetrics(options, true);
         }
     }
 
 
+    private static void writeMetrics(Options options, boolean success) {
+        val summary = Metrics.summary(success);
+        if (!summary.phaseSeconds().isEmpty()) {
+            Metrics.log(summary);
+        }
+        try {
+            if (options.metricsFile != null) {
+                Metrics.writeJson(summary, options.metricsFile);
+            }
+            if (options.prometheusFile != null) {
+                Metrics.writePrometheus(summary, options.prometheusFile);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write metrics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Runs {@code task} for every instance at the same time; the instance's directory prefixes everything it logs.
+     * What they share is safe to use concurrently: {@link Metrics} only counts into concurrent maps,
+     * {@link MetadataCache} writes through temp files, the updater's {@link JarIndex} serializes its saves and the
+     * shared configs repository is guarded by {@link ConfigUpdater}.
+     */
+    private static void forEachInstance(Options options, InstanceTask task) throws IOException, InterruptedException {
+        val tasks = new ArrayList<Callable<Void>>();
+        for (val instance : options.instances) {
+            tasks.add(() -> {
+                ThreadContext.put("instance", instance.config.minecraftDir.toString());
+                try {
+                    task.run(instance.config);
+                } finally {
+                    ThreadContext.remove("instance");
+                }
+                return null;
+            });
+        }
+        Tasks.runAll(tasks);
+    }
+
+    @FunctionalInterface
+    private interface InstanceTask {
+        void run(Options.Instance.InstanceConfig instanceConfig) throws IOException, InterruptedException;
+    }
+
     private static Path getCacheDir() {
         val osName = System.getProperty("os.name").toLowerCase();
         Path cacheDir;
@@ -115,7 +269,7 @@ public class Main {
             DAILY;
         }
 
-        @CommandLine.Option(names = {"-M", "--target-manifest"}, required = true, description = "Which manifest to use as source of mod versions.; Valid values: ${COMPLETION-CANDIDATES}")
+        @CommandLine.Option(names = {"-M", "--target-manifest"}, description = "Which manifest to use as source of mod versions.; Valid values: ${COMPLETION-CANDIDATES}")
         protected TargetManifest targetManifest;
 
         @CommandLine.Option(names = {"--get-latest"}, description = {
@@ -126,13 +280,104 @@ public class Main {
         })
         protected boolean getLatestRelease = false;
 
+        @CommandLine.Option(names = {"--maven-threads"}, description = "Maximum number of concurrent maven search requests used by --get-latest (default: ${DEFAULT-VALUE})")
+        protected int mavenThreads = 8;
+
+        @CommandLine.Option(names = {"--metadata-ttl"}, paramLabel = "MINUTES", description = {
+                "Use cached manifests and maven searches younger than this without contacting the server (default: ${DEFAULT-VALUE}).",
+                "0 always revalidates the cached copy, -1 never does."
+        })
+        protected long metadataTtl = 0;
+
         @CommandLine.Option(names = {"-C", "--configs-only"}, description = "Only update configs (version pulled is based off the target manifest)")
         protected boolean configsOnly = false;
 
         @CommandLine.Option(names = {"-c", "--configs"}, description = "Update configs in addition to mods")
         protected boolean updateConfigs = false;
 
-        @CommandLine.ArgGroup(exclusive = false, multiplicity = "1..*")
+        @CommandLine.Option(names = {"--config-threads"}, description = "Maximum number of config files compared, copied or deleted at once (default: ${DEFAULT-VALUE})")
+        protected int configThreads = 4;
+
+        @CommandLine.Option(names = {"--rollback"}, description = "Swap the mods directory of each instance back to the one the last update replaced, and exit")
+        protected boolean rollback = false;
+
+        @CommandLine.Option(names = {"--cache-gc"}, description = {
+                "Remove cached files the cache policy no longer keeps, report the reclaimed space and exit.",
+                "With --dry-run only reports what could be reclaimed."
+        })
+        protected boolean cacheGc = false;
+
+        @CommandLine.Option(names = {"--cache-max-size"}, paramLabel = "MB", description = "Size budget for cached mods; the least recently used files not installed in any instance are removed to stay under it (default: ${DEFAULT-VALUE}, no budget)")
+        protected long cacheMaxSize = 0;
+
+        @CommandLine.Option(names = {"--cache-max-age"}, paramLabel = "DAYS", description = "Remove cached mods not installed in any instance that no update wanted for this long; -1 keeps them forever (default: ${DEFAULT-VALUE})")
+        protected long cacheMaxAge = 30;
+
+        @CommandLine.Option(names = {"--dry-run"}, description = "Download mods into the cache and print what would change in each instance without changing it")
+        protected boolean dryRun = false;
+
+        @CommandLine.Option(names = {"--plan"}, paramLabel = "FILE", description = {
+                "Write what an update would change in each instance to FILE as JSON and exit.",
+                "Nothing is downloaded and no instance is touched."
+        })
+        protected Path planFile;
+
+        @CommandLine.Option(names = {"--offline"}, description = {
+                "Apply the last snapshot saved for the target manifest (or the one given with --snapshot) without any network access.",
+                "Only mods already in the cache are installed; configs are not updated."
+        })
+        protected boolean offline = false;
+
+        @CommandLine.Option(names = {"--snapshot"}, paramLabel = "FILE", description = {
+                "Apply the assets saved in a snapshot instead of resolving the manifest, e.g. to roll out the same nightly to several hosts.",
+                "Every update saves one per nightly in the snapshots cache directory. --target-manifest is not needed."
+        })
+        protected Path snapshotFile;
+
+        @CommandLine.Option(names = {"-j", "--download-threads"}, description = "Maximum number of concurrent downloads (default: ${DEFAULT-VALUE})")
+        protected int downloadThreads = 8;
+
+        @CommandLine.Option(names = {"--host-limit"}, paramLabel = "HOST=COUNT", description = {
+                "Maximum number of concurrent downloads from a single host; Can be repeated.",
+                "Defaults to nexus.gtnewhorizons.com=4 and github.com=8, other hosts are only bound by --download-threads."
+        })
+        protected Map<String, Integer> hostLimits = new HashMap<>();
+
+        @CommandLine.Option(names = {"--download-retries"}, description = "How often a failed download is retried, resuming where it stopped (default: ${DEFAULT-VALUE})")
+        protected int downloadRetries = 4;
+
+        @CommandLine.Option(names = {"--serve"}, paramLabel = "PORT", description = {
+                "Serve the resolved manifests and the mod cache on PORT for other updaters using --mirror, until stopped.",
+                "Files other updaters ask for are downloaded once and kept for --cache-max-age days.",
+                "Manifests are reused for --metadata-ttl minutes, or 5 if that is 0."
+        })
+        protected int servePort = 0;
+
+        @CommandLine.Option(names = {"--serve-bind"}, paramLabel = "ADDRESS", description = {
+                "Address --serve listens on (default: ${DEFAULT-VALUE}), e.g. 0.0.0.0 for all interfaces.",
+                "There is no authentication, anyone who can reach it can make this host download from the allowed hosts."
+        })
+        protected String serveBind = "127.0.0.1";
+
+        @CommandLine.Option(names = {"--serve-allow-host"}, paramLabel = "HOST", description = "Host --serve may download from in addition to nexus.gtnewhorizons.com and github.com; Can be repeated.")
+        protected Set<String> serveAllowHosts = new HashSet<>();
+
+        @CommandLine.Option(names = {"--mirror"}, paramLabel = "URL", description = "Get the resolved manifest and all downloads from an updater running --serve at URL, e.g. http://cache-host:8642")
+        protected String mirror;
+
+        @CommandLine.Option(names = {"--metrics"}, paramLabel = "FILE", description = "Write a JSON summary of the run to FILE: time per phase, requests and bytes per host, cache hits and files changed per instance")
+        protected Path metricsFile;
+
+        @CommandLine.Option(names = {"--metrics-prometheus"}, paramLabel = "FILE", description = "Write the run's metrics to FILE in the Prometheus text format, e.g. into node_exporter's textfile collector directory as gtnh_updater.prom")
+        protected Path prometheusFile;
+
+        @CommandLine.Option(names = {"--upstream"}, paramLabel = "HOST=URL", description = {
+                "Send requests for HOST to the base URL instead, keeping path and query; Can be repeated.",
+                "E.g. raw.githubusercontent.com, nexus.gtnewhorizons.com and github.com pointed at a local mock for load testing."
+        })
+        protected Map<String, String> upstreams = new HashMap<>();
+
+        @CommandLine.ArgGroup(exclusive = false, multiplicity = "0..*")
         protected List<Instance> instances;
 
         protected static class Instance {
@@ -166,9 +411,22 @@ public class Main {
                     SERVER
                 }
 
-                @CommandLine.Option(names = {"-S", "--symlinks"}, description = "Use symlinks instead of copying files to the mods directory; Mac/Linux only. Must be on the same filesystem.")
-                @Getter
+                @CommandLine.Option(names = {"-S", "--symlinks"}, description = "Use symlinks instead of copying files to the mods directory; Mac/Linux only. Must be on the same filesystem. Same as --install-mode symlink.")
                 private boolean useSymlinks = false;
+
+                @CommandLine.Option(names = {"-I", "--install-mode"}, description = {
+                        "How mods are put into the mods directory (default: copy, or symlink with --symlinks); Valid values: ${COMPLETION-CANDIDATES}",
+                        "hardlink and reflink share the cached files at no extra disk space and fall back to copying across filesystems.",
+                        "reflink needs a filesystem with copy-on-write clones, such as btrfs, XFS or APFS."
+                })
+                private InstallStrategy installMode;
+
+                InstallStrategy getInstallStrategy() {
+                    if (installMode != null) {
+                        return installMode;
+                    }
+                    return useSymlinks ? InstallStrategy.SYMLINK : InstallStrategy.COPY;
+                }
             }
         }
     }
@@ -0,0 +1,137 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * On-disk cache for manifests and maven searches.
+ * <p>
+ * Responses are stored with their ETag/Last-Modified validators and revalidated with conditional requests; a 304 is
+ * served from disk. Responses younger than the configured TTL are served without contacting the server at all.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class MetadataCache implements AutoCloseable {
+    private final Transport transport;
+    private final Path cacheDir;
+    private final Duration ttl;
+
+    /**
+     * @param transport closed along with the cache
+     * @param ttl       how long a stored response is used without revalidating it; negative means forever
+     */
+    MetadataCache(Transport transport, Path cacheDir, Duration ttl) {
+        this.transport = transport;
+        this.cacheDir = cacheDir;
+        this.ttl = ttl;
+    }
+
+    record Response(int statusCode, Path body) {
+    }
+
+    private record Entry(String url, String etag, String lastModified, long fetchedAt) {
+    }
+
+    /**
+     * @return the response; its body is a file in the cache and is null unless the status code is 200
+     */
+    Response get(String url) throws IOException, InterruptedException {
+        Files.createDirectories(cacheDir);
+        val key = key(url);
+        val bodyPath = cacheDir.resolve(key + ".body");
+        val entryPath = cacheDir.resolve(key + ".json");
+
+        Entry entry = null;
+        if (Files.exists(entryPath) && Files.exists(bodyPath)) {
+            entry = JsonParser.parse(Files.readString(entryPath), Entry.class);
+        }
+
+        if (entry != null && isFresh(entry)) {
+            log.debug("Using cached {}", url);
+            return new Response(200, bodyPath);
+        }
+
+        val request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (entry != null && entry.etag() != null) {
+            request.header("If-None-Match", entry.etag());
+        }
+        if (entry != null && entry.lastModified() != null) {
+            request.header("If-Modified-Since", entry.lastModified());
+        }
+
+        Metrics.request(URI.create(url).getHost());
+        val response = transport.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (val body = response.body()) {
+            if (response.statusCode() == 304 && entry != null) {
+                log.debug("{} not modified", url);
+                writeEntry(entryPath, new Entry(url, entry.etag(), entry.lastModified(), System.currentTimeMillis()));
+                return new Response(200, bodyPath);
+            }
+            if (response.statusCode() != 200) {
+                return new Response(response.statusCode(), null);
+            }
+
+            val gzip = response.headers().firstValue("Content-Encoding").map(e -> e.equalsIgnoreCase("gzip")).orElse(false);
+            val temp = Files.createTempFile(cacheDir, key, ".tmp");
+            try (InputStream in = gzip ? new GZIPInputStream(body) : body) {
+                Metrics.received(URI.create(url).getHost(), Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING));
+                AtomicFiles.move(temp, bodyPath);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        writeEntry(entryPath, new Entry(
+                url,
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null),
+                System.currentTimeMillis()
+        ));
+        return new Response(200, bodyPath);
+    }
+
+    private boolean isFresh(Entry entry) {
+        if (ttl == null || ttl.isZero()) {
+            return false;
+        }
+        return ttl.isNegative() || System.currentTimeMillis() - entry.fetchedAt() < ttl.toMillis();
+    }
+
+    private void writeEntry(Path entryPath, Entry entry) throws IOException {
+        val temp = Files.createTempFile(cacheDir, entryPath.getFileName().toString(), ".tmp");
+        Files.writeString(temp, JsonParser.toJson(entry));
+        AtomicFiles.move(temp, entryPath);
+    }
+
+    private static String key(String url) {
+        try {
+            val digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+}
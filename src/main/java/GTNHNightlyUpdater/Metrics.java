@@ -0,0 +1,254 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * What the current run spent its time and bandwidth on, written as a JSON summary and/or a Prometheus textfile.
+ * <p>
+ * Phases that run once per instance, like reconcile or configs, add up the time of all instances, so with several
+ * instances they can exceed the run's duration.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class Metrics {
+    private static final long STARTED = System.nanoTime();
+    private static final Instant STARTED_AT = Instant.now();
+
+    private static final Map<String, LongAdder> PHASE_NANOS = new ConcurrentHashMap<>();
+    private static final Map<String, HostCounters> HOSTS = new ConcurrentHashMap<>();
+    private static final Map<String, InstanceCounters> INSTANCES = new ConcurrentHashMap<>();
+    private static final Map<String, ModCounters> MODS = new ConcurrentHashMap<>();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    private record HostCounters(LongAdder requests, LongAdder bytes, LongAdder retries, LongAdder failures) {
+        HostCounters() {
+            this(new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder());
+        }
+    }
+
+    private record InstanceCounters(Map<String, LongAdder> installed, LongAdder deleted) {
+        InstanceCounters() {
+            this(new ConcurrentHashMap<>(), new LongAdder());
+        }
+    }
+
+    private record ModCounters(LongAdder downloadNanos, LongAdder bytes) {
+        ModCounters() {
+            this(new LongAdder(), new LongAdder());
+        }
+    }
+
+    record Summary(
+            String startedAt,
+            double durationSeconds,
+            boolean success,
+            Map<String, Double> phaseSeconds,
+            Map<String, Host> hosts,
+            Cache cache,
+            Map<String, Instance> instances,
+            Map<String, Mod> downloads
+    ) {
+    }
+
+    record Host(long requests, long bytes, long retries, long failures) {
+    }
+
+    record Cache(long hits, long misses, double hitRatio) {
+    }
+
+    /**
+     * @param installed files put into the mods directory, by install mode
+     */
+    record Instance(Map<String, Long> installed, long deleted) {
+    }
+
+    record Mod(double seconds, long bytes) {
+    }
+
+    /**
+     * Adds the time until {@link Timer#close()} to {@code phase}.
+     */
+    static Timer time(String phase) {
+        return new Timer(phase, System.nanoTime());
+    }
+
+    static final class Timer implements AutoCloseable {
+        private final String phase;
+        private final long start;
+
+        private Timer(String phase, long start) {
+            this.phase = phase;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            PHASE_NANOS.computeIfAbsent(phase, k -> new LongAdder()).add(System.nanoTime() - start);
+        }
+    }
+
+    static void request(String host) {
+        host(host).requests().increment();
+    }
+
+    static void received(String host, long bytes) {
+        host(host).bytes().add(bytes);
+    }
+
+    static void retry(String host) {
+        host(host).retries().increment();
+    }
+
+    static void failure(String host) {
+        host(host).failures().increment();
+    }
+
+    static void cacheHit() {
+        CACHE_HITS.increment();
+    }
+
+    static void cacheMiss() {
+        CACHE_MISSES.increment();
+    }
+
+    static void downloaded(String mod, long nanos, long bytes) {
+        val counters = MODS.computeIfAbsent(mod, k -> new ModCounters());
+        counters.downloadNanos().add(nanos);
+        counters.bytes().add(bytes);
+    }
+
+    static void installed(Path minecraftDir, InstallStrategy installStrategy, int count) {
+        instance(minecraftDir).installed().computeIfAbsent(installStrategy.name().toLowerCase(Locale.ROOT), k -> new LongAdder()).add(count);
+    }
+
+    static void deleted(Path minecraftDir, int count) {
+        instance(minecraftDir).deleted().add(count);
+    }
+
+    static Summary summary(boolean success) {
+        val hits = CACHE_HITS.sum();
+        val misses = CACHE_MISSES.sum();
+        return new Summary(
+                STARTED_AT.toString(),
+                seconds(System.nanoTime() - STARTED),
+                success,
+                collect(PHASE_NANOS, nanos -> seconds(nanos.sum())),
+                collect(HOSTS, host -> new Host(host.requests().sum(), host.bytes().sum(), host.retries().sum(), host.failures().sum())),
+                new Cache(hits, misses, hits + misses > 0 ? (double) hits / (hits + misses) : 0),
+                collect(INSTANCES, instance -> new Instance(collect(instance.installed(), LongAdder::sum), instance.deleted().sum())),
+                collect(MODS, mod -> new Mod(seconds(mod.downloadNanos().sum()), mod.bytes().sum()))
+        );
+    }
+
+    static void log(Summary summary) {
+        val phases = new StringBuilder();
+        summary.phaseSeconds().forEach((phase, seconds) -> phases.append(String.format(Locale.ROOT, " %s=%.1fs", phase, seconds)));
+        val bytes = summary.hosts().values().stream().mapToLong(Host::bytes).sum();
+        log.info("Finished in {}s, downloaded {} bytes, cache hit ratio {};{}",
+                String.format(Locale.ROOT, "%.1f", summary.durationSeconds()), bytes, String.format(Locale.ROOT, "%.2f", summary.cache().hitRatio()), phases);
+    }
+
+    static void writeJson(Summary summary, Path path) throws IOException {
+        write(path, JsonParser.toJson(summary));
+    }
+
+    /**
+     * Writes the summary in the Prometheus text format for node_exporter's textfile collector. Per mod timings are
+     * left out to keep the number of series small.
+     */
+    static void writePrometheus(Summary summary, Path path) throws IOException {
+        val out = new StringBuilder();
+        gauge(out, "gtnh_updater_last_run_timestamp_seconds", "When the last run started", Instant.parse(summary.startedAt()).getEpochSecond());
+        gauge(out, "gtnh_updater_last_run_duration_seconds", "How long the last run took", summary.durationSeconds());
+        gauge(out, "gtnh_updater_last_run_success", "Whether the last run finished without failing", summary.success() ? 1 : 0);
+
+        header(out, "gtnh_updater_phase_seconds", "Time spent in each phase, summed over instances");
+        summary.phaseSeconds().forEach((phase, seconds) -> sample(out, "gtnh_updater_phase_seconds", seconds, "phase", phase));
+
+        header(out, "gtnh_updater_http_requests", "HTTP requests sent per host");
+        summary.hosts().forEach((host, counters) -> sample(out, "gtnh_updater_http_requests", counters.requests(), "host", host));
+        header(out, "gtnh_updater_http_received_bytes", "Bytes received per host");
+        summary.hosts().forEach((host, counters) -> sample(out, "gtnh_updater_http_received_bytes", counters.bytes(), "host", host));
+        header(out, "gtnh_updater_http_retries", "Download retries per host");
+        summary.hosts().forEach((host, counters) -> sample(out, "gtnh_updater_http_retries", counters.retries(), "host", host));
+        header(out, "gtnh_updater_http_failures", "Downloads given up on per host");
+        summary.hosts().forEach((host, counters) -> sample(out, "gtnh_updater_http_failures", counters.failures(), "host", host));
+
+        gauge(out, "gtnh_updater_cache_hits", "Mods found in the cache", summary.cache().hits());
+        gauge(out, "gtnh_updater_cache_misses", "Mods that had to be downloaded", summary.cache().misses());
+
+        header(out, "gtnh_updater_files_installed", "Files put into the mods directory per instance and install mode");
+        summary.instances().forEach((instance, counters) -> counters.installed().forEach((mode, count) ->
+                sample(out, "gtnh_updater_files_installed", count, "instance", instance, "mode", mode)));
+        header(out, "gtnh_updater_files_deleted", "Files removed from the mods directory per instance");
+        summary.instances().forEach((instance, counters) -> sample(out, "gtnh_updater_files_deleted", counters.deleted(), "instance", instance));
+        write(path, out.toString());
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help);
+        sample(out, name, value);
+    }
+
+    private static void header(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+    }
+
+    private static void sample(StringBuilder out, String name, double value, String... labels) {
+        out.append(name);
+        if (labels.length > 0) {
+            out.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value)).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        // node_exporter may read the file at any time, so it must never be half written
+        val temp = path.toAbsolutePath().resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, content);
+        AtomicFiles.move(temp, path);
+    }
+
+    private static HostCounters host(String host) {
+        return HOSTS.computeIfAbsent(String.valueOf(host), k -> new HostCounters());
+    }
+
+    private static InstanceCounters instance(Path minecraftDir) {
+        return INSTANCES.computeIfAbsent(minecraftDir.toString(), k -> new InstanceCounters());
+    }
+
+    private static <V, R> Map<String, R> collect(Map<String, V> map, Function<V, R> mapper) {
+        val result = new TreeMap<String, R>();
+        map.forEach((key, value) -> result.put(key, mapper.apply(value)));
+        return result;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+}
@@ -0,0 +1,310 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Models.Snapshot;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Lets other updaters use this host's cache as a pull-through mirror, so each file is downloaded from upstream once
+ * per site instead of once per host.
+ * <p>
+ * {@code GET /assets/<daily|experimental>} returns the resolved assets as a {@link Snapshot}.
+ * {@code GET /fetch?url=<upstream url>} returns the file at that url: from the mods cache if it is one of the resolved
+ * mods, otherwise from the mirror directory, downloading it first if needed. Only urls on allowed hosts or the hosts of
+ * resolved mods are fetched, so the server can't be used as an open proxy.
+ * <p>
+ * There is no authentication: anyone who can reach the port can make this host download from the allowed hosts, so it
+ * only listens on loopback unless told otherwise.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class MirrorServer implements AutoCloseable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+    // how long resolved manifests are reused for clients when --metadata-ttl always revalidates
+    static final Duration DEFAULT_ASSETS_TTL = Duration.ofMinutes(5);
+
+    private final Updater updater;
+    private final Path modCacheDir;
+    private final Path mirrorDir;
+    private final Downloader downloader;
+    // the hosts of resolved mods are added, wherever the manifest points them
+    private final Set<String> allowedHosts = ConcurrentHashMap.newKeySet();
+    // upstream url -> mods cache entry, for the mods of the last resolved assets
+    private final Map<String, Path> cachedByUrl = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final Duration assetsTtl;
+    private final HttpServer server;
+
+    /**
+     * @param assetsTtl how long a manifest fetched for one client is used for the others without contacting upstream
+     */
+    MirrorServer(Updater updater, Path cacheDir, Downloader downloader, Set<String> allowedHosts, String bindAddress, int port, Duration assetsTtl) throws IOException {
+        this.updater = updater;
+        this.modCacheDir = cacheDir.resolve("mods");
+        this.mirrorDir = cacheDir.resolve("mirror");
+        this.downloader = downloader;
+        this.allowedHosts.addAll(Downloader.DEFAULT_HOST_LIMITS.keySet());
+        this.allowedHosts.addAll(allowedHosts);
+        this.assetsTtl = assetsTtl;
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/assets/", this::handleAssets);
+        server.createContext("/fetch", this::handleFetch);
+    }
+
+    void start() throws IOException {
+        Files.createDirectories(mirrorDir);
+        server.start();
+        log.info("Serving {} and {} on {}", modCacheDir, mirrorDir, server.getAddress());
+    }
+
+    /**
+     * Deletes mirrored files nobody asked for within {@code maxAge}.
+     */
+    void removeStale(Duration maxAge) throws IOException {
+        if (maxAge.isNegative() || Files.notExists(mirrorDir)) {
+            return;
+        }
+        val cutoff = System.currentTimeMillis() - maxAge.toMillis();
+        try (val paths = Files.list(mirrorDir)) {
+            for (val path : (Iterable<Path>) paths::iterator) {
+                if (Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                    log.info("\tRemoving stale mirrored file {}", path.getFileName());
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private void handleAssets(HttpExchange exchange) {
+        // the exchange is closed last, so failures can still be answered
+        try (exchange) {
+            try {
+                serveAssets(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                log.warn("Unable to resolve assets: {}", e.getMessage());
+                sendStatus(exchange, 502);
+            }
+        }
+    }
+
+    private void serveAssets(HttpExchange exchange) throws IOException, InterruptedException {
+        val name = exchange.getRequestURI().getPath().substring("/assets/".length());
+        Main.Options.TargetManifest targetManifest;
+        try {
+            targetManifest = Main.Options.TargetManifest.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        // clients asking at once share one fetch, and later ones use it until it is older than the ttl
+        Assets.Asset assets;
+        val lock = locks.computeIfAbsent("assets/" + targetManifest, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            assets = updater.fetchDAXXLAssets(targetManifest, assetsTtl);
+        } finally {
+            lock.unlock();
+        }
+        for (val mod : assets.getMods()) {
+            val version = mod.getLatest();
+            if (version == null || version.getFileName() == null) {
+                continue;
+            }
+            val url = Updater.downloadUrl(mod, version);
+            val host = URI.create(url).getHost();
+            if (host != null) {
+                allowedHosts.add(host);
+            }
+            val cachePath = Updater.cachePath(mod, version, modCacheDir);
+            if (Files.exists(cachePath)) {
+                cachedByUrl.put(url, cachePath);
+            }
+        }
+
+        val body = JsonParser.toJson(Snapshot.of(targetManifest.name(), assets)).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void handleFetch(HttpExchange exchange) {
+        try (exchange) {
+            try {
+                serveFetch(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IllegalArgumentException e) {
+                log.warn("Unable to serve {}: {}", exchange.getRequestURI(), e.getMessage());
+                sendStatus(exchange, 400);
+            } catch (IOException e) {
+                log.warn("Unable to serve {}: {}", exchange.getRequestURI(), e.getMessage());
+                sendStatus(exchange, 502);
+            }
+        }
+    }
+
+    private void serveFetch(HttpExchange exchange) throws IOException, InterruptedException {
+        val url = queryParameter(exchange.getRequestURI(), "url");
+        if (url == null) {
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        }
+        val host = URI.create(url).getHost();
+        if (host == null || !allowedHosts.contains(host)) {
+            log.warn("Refusing to fetch {} for {}", url, exchange.getRemoteAddress());
+            exchange.sendResponseHeaders(403, -1);
+            return;
+        }
+
+        val head = exchange.getRequestMethod().equalsIgnoreCase("HEAD");
+        var file = cachedByUrl.get(url);
+        if (file == null || Files.notExists(file)) {
+            file = mirrorDir.resolve(key(url));
+            if (Files.notExists(file)) {
+                if (head) {
+                    // don't download a file just to tell its size
+                    val size = downloader.size(url);
+                    if (size > 0) {
+                        exchange.getResponseHeaders().add("Content-Length", String.valueOf(size));
+                    }
+                    exchange.sendResponseHeaders(size < 0 ? 404 : 200, -1);
+                    return;
+                }
+                if (!mirror(url, file)) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+
+        send(exchange, file, head);
+    }
+
+    /**
+     * Answers a failed request with {@code status}, unless the response was already started, in which case closing the
+     * exchange cuts it short.
+     */
+    private static void sendStatus(HttpExchange exchange, int status) {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        try {
+            exchange.sendResponseHeaders(status, -1);
+        } catch (IOException e) {
+            log.debug("Unable to send {} to {}: {}", status, exchange.getRemoteAddress(), e.getMessage());
+        }
+    }
+
+    private boolean mirror(String url, Path file) throws IOException, InterruptedException {
+        // one download per file, however many hosts ask for it at once
+        val lock = locks.computeIfAbsent(file.getFileName().toString(), k -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (Files.exists(file)) {
+                return true;
+            }
+            log.info("Mirroring {}", url);
+            return downloader.download(url, file);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void send(HttpExchange exchange, Path file, boolean head) throws IOException {
+        val size = Files.size(file);
+        long start = 0;
+        val range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            val matcher = RANGE.matcher(range);
+            if (matcher.matches()) {
+                start = Long.parseLong(matcher.group(1));
+            }
+        }
+
+        if (start >= size && start > 0) {
+            exchange.getResponseHeaders().add("Content-Range", "bytes */" + size);
+            exchange.sendResponseHeaders(416, -1);
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        if (start > 0) {
+            exchange.getResponseHeaders().add("Content-Range", String.format("bytes %d-%d/%d", start, size - 1, size));
+        }
+        if (head) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(size - start));
+            exchange.sendResponseHeaders(start > 0 ? 206 : 200, -1);
+            return;
+        }
+
+        // a length of 0 means chunked to HttpServer
+        exchange.sendResponseHeaders(start > 0 ? 206 : 200, size - start == 0 ? -1 : size - start);
+        try (val in = Files.newInputStream(file)) {
+            in.skipNBytes(start);
+            in.transferTo(exchange.getResponseBody());
+        }
+    }
+
+    private static String queryParameter(URI uri, String name) {
+        val query = uri.getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (val parameter : query.split("&")) {
+            val split = parameter.split("=", 2);
+            if (split.length == 2 && split[0].equals(name)) {
+                return URLDecoder.decode(split[1], StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static String key(String url) {
+        try {
+            val digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the port the server listens on, the one picked by the system if it was started on port 0
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        downloader.close();
+    }
+}
@@ -0,0 +1,351 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Works out what has to change in a mods directory with a single pass over the installed jars.
+ * <p>
+ * Every file name a mod is known by goes into an exact index, and the names of the versions being installed go into a
+ * pattern index keyed by the text before the version, where the version itself matches anything (this is what catches
+ * local builds). Each installed jar is then looked up once.
+ * <p>
+ * When the contents of the jars are known (see {@link JarIndex}), a jar no name matches is still recognised as a copy of
+ * a mod being installed by its hash, or as an other version of it when it ships exactly the same modids with a different
+ * version, and a pattern match is ignored when the jar's modids show it is a different mod.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class ModReconciler {
+    enum Reason {
+        SIDE_NONE,
+        EXCLUDED,
+        OLD_VERSION
+    }
+
+    record Delete(String modName, Path path, Reason reason) {
+    }
+
+    /**
+     * @param replaces name of the jar this one upgrades, or null for a new mod
+     */
+    record Add(Assets.Mod mod, Assets.Version version, Path source, String fileName, String replaces) {
+    }
+
+    /**
+     * @param unavailable mods that should be installed but couldn't be, because they aren't cached
+     */
+    record Plan(Path modsDir, List<Delete> deletes, List<Add> adds, List<String> kept, List<String> unavailable) {
+        boolean isEmpty() {
+            return deletes.isEmpty() && adds.isEmpty();
+        }
+
+        void log() {
+            val upgraded = new HashSet<String>();
+            for (val add : adds) {
+                if (add.replaces() != null) {
+                    upgraded.add(add.mod().getName());
+                }
+            }
+            for (val delete : deletes) {
+                val fileName = delete.path().getFileName();
+                switch (delete.reason()) {
+                    case SIDE_NONE -> log.info("\tDeleting mod with side of NONE: {} - {}", delete.modName(), fileName);
+                    case EXCLUDED -> log.info("\tDeleting excluded mod: {} - {}", delete.modName(), fileName);
+                    case OLD_VERSION -> {
+                        if (!upgraded.contains(delete.modName())) {
+                            log.info("\tDeleting old version of {} - {}", delete.modName(), fileName);
+                        }
+                    }
+                }
+            }
+            for (val add : adds) {
+                if (add.replaces() != null) {
+                    log.info("\tUpgrading {} - {} -> {}", add.mod().getName(), add.replaces(), add.fileName());
+                } else {
+                    log.info("\tNew Mod {} - {}", add.mod().getName(), add.fileName());
+                }
+            }
+            log.debug("\tKeeping {} up to date jars", kept.size());
+        }
+    }
+
+    private record Claim(Assets.Mod mod, Reason reason) {
+    }
+
+    private record Wanted(Assets.Mod mod, Assets.Version version, Path source) {
+    }
+
+    /**
+     * @param jar contents of the cached jar being installed for the claim's mod
+     */
+    private record Installing(Claim claim, JarIndex.Jar jar) {
+    }
+
+    /**
+     * Contents of the jars being installed, by hash and by the set of modids they ship.
+     */
+    private record Content(Map<String, List<Claim>> byHash, Map<Set<String>, List<Installing>> byModIds, Map<String, List<String>> modIds) {
+        void add(Claim claim, JarIndex.Jar jar) {
+            if (jar == null) {
+                return;
+            }
+            byHash.computeIfAbsent(jar.sha256(), k -> new ArrayList<>()).add(claim);
+            val ids = modIdSet(jar);
+            if (!ids.isEmpty()) {
+                byModIds.computeIfAbsent(ids, k -> new ArrayList<>()).add(new Installing(claim, jar));
+            }
+            modIds.put(claim.mod().getName(), jar.modIds());
+        }
+
+        /**
+         * @return the mod {@code jar} is a copy of, or an other version of because it ships the same modids with a
+         * different version; null when it is neither or several mods fit
+         */
+        Claim find(JarIndex.Jar jar) {
+            if (jar == null) {
+                return null;
+            }
+            val sameContent = byHash.get(jar.sha256());
+            if (sameContent != null) {
+                return sameContent.size() == 1 ? sameContent.get(0) : null;
+            }
+            val ids = modIdSet(jar);
+            val sameMods = ids.isEmpty() ? null : byModIds.get(ids);
+            // shared ids like a core or library mod's can't tell which mod the jar belongs to
+            if (sameMods == null || sameMods.size() != 1) {
+                return null;
+            }
+            val installing = sameMods.get(0);
+            val version = installing.jar().version();
+            if (jar.version() == null || version == null || version.equals(jar.version())) {
+                return null;
+            }
+            return installing.claim();
+        }
+
+        /**
+         * @return whether both jars have known modids and none of them are shared
+         */
+        boolean isDifferentMod(Assets.Mod mod, JarIndex.Jar jar) {
+            val wantedIds = modIds.get(mod.getName());
+            if (jar == null || jar.modIds().isEmpty() || wantedIds == null || wantedIds.isEmpty()) {
+                return false;
+            }
+            return jar.modIds().stream().noneMatch(wantedIds::contains);
+        }
+    }
+
+    /**
+     * File name pattern in which every occurrence of the version matches any text, compared case-insensitively.
+     */
+    private record NamePattern(Assets.Mod mod, String[] segments) {
+        static NamePattern of(Assets.Mod mod, String fileName, String version) {
+            val lowerName = fileName.toLowerCase(Locale.ROOT);
+            if (version == null || version.isEmpty()) {
+                return new NamePattern(mod, new String[]{lowerName});
+            }
+            return new NamePattern(mod, lowerName.split(Pattern.quote(version.toLowerCase(Locale.ROOT)), -1));
+        }
+
+        String prefix() {
+            return segments[0];
+        }
+
+        boolean matches(String lowerName) {
+            if (segments.length == 1) {
+                return lowerName.equals(segments[0]);
+            }
+            val last = segments[segments.length - 1];
+            int position = segments[0].length();
+            val end = lowerName.length() - last.length();
+            if (end < position || !lowerName.startsWith(segments[0]) || !lowerName.endsWith(last)) {
+                return false;
+            }
+            for (int i = 1; i < segments.length - 1; i++) {
+                val found = lowerName.indexOf(segments[i], position);
+                if (found < 0 || found + segments[i].length() > end) {
+                    return false;
+                }
+                position = found + segments[i].length();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param installed jars currently in the mods directory, keyed by file name
+     */
+    static Plan plan(Assets.Asset assets, Set<String> modExclusions, Main.Options.Instance.InstanceConfig.Side side, Path modsDir, Map<String, Path> installed) {
+        return plan(assets, modExclusions, side, modsDir, installed, version -> Files.exists(version.getCachePath()));
+    }
+
+    /**
+     * @param available whether a version can be installed, versions it rejects are skipped
+     */
+    static Plan plan(Assets.Asset assets, Set<String> modExclusions, Main.Options.Instance.InstanceConfig.Side side, Path modsDir, Map<String, Path> installed, Predicate<Assets.Version> available) {
+        return plan(assets, modExclusions, side, modsDir, installed, available, Map.of());
+    }
+
+    /**
+     * @param jars contents of the installed jars and of the cached jars of the versions being installed; jars missing
+     *             from it are only matched by name
+     */
+    static Plan plan(Assets.Asset assets, Set<String> modExclusions, Main.Options.Instance.InstanceConfig.Side side, Path modsDir, Map<String, Path> installed, Predicate<Assets.Version> available, Map<Path, JarIndex.Jar> jars) {
+        val wanted = new TreeMap<String, Wanted>();
+        val unavailable = new ArrayList<String>();
+        val exactClaims = new HashMap<String, List<Claim>>();
+        val patternsByPrefix = new HashMap<String, List<NamePattern>>();
+        val content = new Content(new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+        for (val mod : assets.getMods()) {
+            if (mod.getSide() != null && mod.getSide().equals("NONE")) {
+                claimAll(exactClaims, mod.getOtherFileNames(null), new Claim(mod, Reason.SIDE_NONE));
+                continue;
+            }
+            if (mod.getVersions() == null || mod.getVersions().isEmpty()) {
+                continue;
+            }
+
+            // side being null == BOTH
+            val modSide = mod.getSide() != null ? mod.getSide().split("_")[0] : "BOTH";
+            if (mod.getSide() != null && !(modSide.equalsIgnoreCase(String.valueOf(side)) || modSide.equalsIgnoreCase("BOTH"))) {
+                continue;
+            }
+
+            if (modExclusions.contains(mod.getName())) {
+                claimAll(exactClaims, mod.getOtherFileNames(null), new Claim(mod, Reason.EXCLUDED));
+                continue;
+            }
+
+            val version = mod.getLatest();
+            if (version == null) {
+                log.warn("\tUnable to determine mod version for {}", mod.getName());
+                unavailable.add(mod.getName());
+                continue;
+            }
+            if (version.getCachePath() == null) {
+                log.warn("\tUnable to get cached path for {}", mod.getName());
+                unavailable.add(mod.getName());
+                continue;
+            }
+            if (!available.test(version)) {
+                log.warn("\tSkipping {} - File not found: '{}'", mod.getName(), version.getCachePath());
+                unavailable.add(mod.getName());
+                continue;
+            }
+
+            val fileName = version.getCachePath().getFileName().toString();
+            wanted.putIfAbsent(fileName, new Wanted(mod, version, version.getCachePath()));
+
+            val claim = new Claim(mod, Reason.OLD_VERSION);
+            claimAll(exactClaims, mod.getOtherFileNames(version), claim);
+            content.add(claim, jars.get(version.getCachePath()));
+            if (fileName.startsWith("+")) {
+                // UniMixins used to be installed without the leading +
+                claimAll(exactClaims, Set.of(fileName.substring(1)), claim);
+            }
+
+            // other builds of the same version scheme, usually local -pre builds, but not name changes
+            addPattern(patternsByPrefix, NamePattern.of(mod, fileName, version.getVersion()));
+            if (version.getGithubName() != null && !version.getGithubName().isEmpty()) {
+                addPattern(patternsByPrefix, NamePattern.of(mod, version.getGithubName(), version.getVersion()));
+            }
+        }
+
+        val deletes = new ArrayList<Delete>();
+        val kept = new ArrayList<String>();
+        val replaced = new HashMap<String, String>();
+        for (val entry : new TreeMap<>(installed).entrySet()) {
+            val fileName = entry.getKey();
+            if (wanted.containsKey(fileName)) {
+                kept.add(fileName);
+                continue;
+            }
+
+            val jar = jars.get(entry.getValue());
+            var claim = findClaim(fileName, exactClaims, patternsByPrefix, content, jar);
+            if (claim == null) {
+                claim = content.find(jar);
+            }
+            if (claim == null) {
+                continue;
+            }
+            deletes.add(new Delete(claim.mod().getName(), entry.getValue(), claim.reason()));
+            if (claim.reason() == Reason.OLD_VERSION) {
+                replaced.put(claim.mod().getName(), fileName);
+            }
+        }
+
+        val adds = new ArrayList<Add>();
+        for (val entry : wanted.entrySet()) {
+            if (installed.containsKey(entry.getKey())) {
+                continue;
+            }
+            val target = entry.getValue();
+            adds.add(new Add(target.mod(), target.version(), target.source(), entry.getKey(), replaced.get(target.mod().getName())));
+        }
+
+        deletes.sort(Comparator.comparing((Delete d) -> d.modName().toLowerCase(Locale.ROOT)).thenComparing(Delete::path));
+        adds.sort(Comparator.comparing((Add a) -> a.mod().getName().toLowerCase(Locale.ROOT)));
+        return new Plan(modsDir, deletes, adds, kept, unavailable);
+    }
+
+    private static Set<String> modIdSet(JarIndex.Jar jar) {
+        val ids = new HashSet<String>();
+        for (val modId : jar.modIds()) {
+            if (!modId.isBlank()) {
+                ids.add(modId);
+            }
+        }
+        return ids;
+    }
+
+    private static void claimAll(Map<String, List<Claim>> exactClaims, Set<String> fileNames, Claim claim) {
+        for (val fileName : fileNames) {
+            exactClaims.computeIfAbsent(fileName, k -> new ArrayList<>()).add(claim);
+        }
+    }
+
+    private static void addPattern(Map<String, List<NamePattern>> patternsByPrefix, NamePattern pattern) {
+        patternsByPrefix.computeIfAbsent(pattern.prefix(), k -> new ArrayList<>()).add(pattern);
+    }
+
+    private static Claim findClaim(String fileName, Map<String, List<Claim>> exactClaims, Map<String, List<NamePattern>> patternsByPrefix, Content content, JarIndex.Jar jar) {
+        val claims = exactClaims.get(fileName);
+        if (claims != null) {
+            // removing a mod outright wins over treating the jar as an old version of another one
+            return claims.stream().min(Comparator.comparing(Claim::reason)).orElseThrow();
+        }
+
+        val lowerName = fileName.toLowerCase(Locale.ROOT);
+        // longest prefix first, the most specific pattern wins
+        for (int i = lowerName.length(); i >= 0; i--) {
+            val patterns = patternsByPrefix.get(lowerName.substring(0, i));
+            if (patterns == null) {
+                continue;
+            }
+            for (val pattern : patterns) {
+                // a name that looks like another build can still be a different mod
+                if (pattern.matches(lowerName) && !content.isDifferentMod(pattern.mod(), jar)) {
+                    return new Claim(pattern.mod(), Reason.OLD_VERSION);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,12 +1,19 @@
 package GTNHNightlyUpdater.Models;
 
 import com.google.gson.annotations.SerializedName;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NonNull;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class Assets {
 
@@ -18,6 +25,29 @@ public class Assets {
         @SerializedName("latest_successful_nightly")
         private final int latestSuccessfulNightly;
         private transient String configTag;
+        @Getter(AccessLevel.NONE)
+        private transient Map<String, Mod> modsByName = new HashMap<>();
+
+        public Asset(List<Mod> mods, int latestNightly, int latestSuccessfulNightly) {
+            this.mods = mods;
+            this.latestNightly = latestNightly;
+            this.latestSuccessfulNightly = latestSuccessfulNightly;
+            for (Mod mod : mods) {
+                modsByName.put(mod.getName(), mod);
+            }
+        }
+
+        public Mod getMod(String name) {
+            return modsByName.get(name);
+        }
+
+        /**
+         * Adds a mod, replacing any mod of the same name in the name index.
+         */
+        public void addMod(Mod mod) {
+            mods.add(mod);
+            modsByName.put(mod.getName(), mod);
+        }
     }
 
     @Data
@@ -31,6 +61,59 @@ public class Assets {
         private String latestVersion;
         @NonNull
         private final List<Version> versions;
+        // file names of versions that weren't kept while parsing; used to find and remove installed copies
+        private transient Set<String> retiredFileNames = new HashSet<>();
+        @Getter(AccessLevel.NONE)
+        private transient Map<String, Version> versionsByTag = new HashMap<>();
+
+        public Mod(String name, String source, @NonNull List<Version> versions) {
+            this.name = name;
+            this.source = source;
+            this.versions = versions;
+            for (Version version : versions) {
+                versionsByTag.putIfAbsent(version.getVersion(), version);
+            }
+        }
+
+        public Version getVersion(String versionTag) {
+            return versionTag != null ? versionsByTag.get(versionTag) : null;
+        }
+
+        /**
+         * @return the version selected by the manifest (or maven), null if it isn't known
+         */
+        public Version getLatest() {
+            return getVersion(latestVersion);
+        }
+
+        public void addVersion(Version version) {
+            versions.add(version);
+            versionsByTag.putIfAbsent(version.getVersion(), version);
+        }
+
+        public void removeVersion(String versionTag) {
+            versions.removeIf(v -> v.getVersion().equals(versionTag));
+            versionsByTag.remove(versionTag);
+        }
+
+        /**
+         * @return every file name a known version of this mod, other than {@code current}, may be installed under
+         */
+        public Set<String> getOtherFileNames(Version current) {
+            Set<String> names = new LinkedHashSet<>(retiredFileNames);
+            for (Version version : versions) {
+                if (current != null && version.getVersion().equals(current.getVersion())) {
+                    continue;
+                }
+                if (version.getFileName() != null) {
+                    names.add(version.getFileName());
+                }
+                if (version.getGithubName() != null) {
+                    names.add(version.getGithubName());
+                }
+            }
+            return names;
+        }
     }
 
     @Data
@@ -44,6 +127,7 @@ public class Assets {
         @SerializedName("browser_download_url")
         private String browserDownloadUrl;
         private transient String fileName;
+        private transient String sha256;
         private transient Path cachePath;
         private transient List<Path> extraAssets = new ArrayList<>();
     }
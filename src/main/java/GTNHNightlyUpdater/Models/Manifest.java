@@ -0,0 +1,21 @@
+package GTNHNightlyUpdater.Models;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Map;
+
+public record Manifest(
+        String config,
+        @SerializedName("github_mods") Map<String, ModEntry> githubMods,
+        @SerializedName("external_mods") Map<String, ModEntry> externalMods
+) {
+    public record ModEntry(String version, String side) {
+    }
+
+    public ModEntry getMod(String name) {
+        if (externalMods != null && externalMods.containsKey(name)) {
+            return externalMods.get(name);
+        }
+        return githubMods != null ? githubMods.get(name) : null;
+    }
+}
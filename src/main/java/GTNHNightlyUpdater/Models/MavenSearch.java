@@ -10,10 +10,14 @@ public class MavenSearch {
     public record Item(
             String downloadUrl,
             Date lastModified,
-            Maven2 maven2
+            Maven2 maven2,
+            Checksum checksum
     ) {
     }
 
+    public record Checksum(String sha1, String sha256) {
+    }
+
     public record Maven2(String version, String artifactId) {
     }
 }
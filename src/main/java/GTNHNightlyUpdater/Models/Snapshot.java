@@ -0,0 +1,81 @@
+package GTNHNightlyUpdater.Models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A resolved {@link Assets.Asset}, including what parsing the manifest worked out, so it can be stored and served.
+ */
+public record Snapshot(
+        String targetManifest,
+        int latestNightly,
+        int latestSuccessfulNightly,
+        String configTag,
+        List<Mod> mods
+) {
+    public record Mod(
+            String name,
+            String side,
+            String source,
+            boolean isPrivate,
+            String latestVersion,
+            Set<String> retiredFileNames,
+            List<Version> versions
+    ) {
+    }
+
+    public record Version(
+            String version,
+            String githubName,
+            String fileName,
+            String downloadUrl,
+            String browserDownloadUrl,
+            String sha256
+    ) {
+    }
+
+    public static Snapshot of(String targetManifest, Assets.Asset asset) {
+        List<Mod> mods = new ArrayList<>();
+        for (Assets.Mod mod : asset.getMods()) {
+            List<Version> versions = new ArrayList<>();
+            for (Assets.Version version : mod.getVersions()) {
+                versions.add(new Version(
+                        version.getVersion(),
+                        version.getGithubName(),
+                        version.getFileName(),
+                        version.getDownloadUrl(),
+                        version.getBrowserDownloadUrl(),
+                        version.getSha256()
+                ));
+            }
+            mods.add(new Mod(mod.getName(), mod.getSide(), mod.getSource(), mod.isPrivate(), mod.getLatestVersion(), mod.getRetiredFileNames(), versions));
+        }
+        return new Snapshot(targetManifest, asset.getLatestNightly(), asset.getLatestSuccessfulNightly(), asset.getConfigTag(), mods);
+    }
+
+    public Assets.Asset toAsset() {
+        Assets.Asset asset = new Assets.Asset(new ArrayList<>(), latestNightly, latestSuccessfulNightly);
+        asset.setConfigTag(configTag);
+        for (Mod snapshotMod : mods) {
+            Assets.Mod mod = new Assets.Mod(snapshotMod.name(), snapshotMod.source(), new ArrayList<>());
+            mod.setSide(snapshotMod.side());
+            mod.setPrivate(snapshotMod.isPrivate());
+            mod.setLatestVersion(snapshotMod.latestVersion());
+            if (snapshotMod.retiredFileNames() != null) {
+                mod.getRetiredFileNames().addAll(snapshotMod.retiredFileNames());
+            }
+            for (Version snapshotVersion : snapshotMod.versions()) {
+                Assets.Version version = new Assets.Version(snapshotVersion.version());
+                version.setGithubName(snapshotVersion.githubName());
+                version.setFileName(snapshotVersion.fileName());
+                version.setDownloadUrl(snapshotVersion.downloadUrl());
+                version.setBrowserDownloadUrl(snapshotVersion.browserDownloadUrl());
+                version.setSha256(snapshotVersion.sha256());
+                mod.addVersion(version);
+            }
+            asset.addMod(mod);
+        }
+        return asset;
+    }
+}
@@ -0,0 +1,41 @@
+package GTNHNightlyUpdater.Models;
+
+import java.util.List;
+
+/**
+ * Everything an update would change, written by {@code --plan}.
+ */
+public record UpdatePlan(
+        String targetManifest,
+        int latestNightly,
+        String configTag,
+        long downloadBytes,
+        List<Download> downloads,
+        List<Instance> instances
+) {
+    /**
+     * @param size bytes reported by the server, 0 if it didn't say
+     */
+    public record Download(String mod, String version, String fileName, String url, long size) {
+    }
+
+    /**
+     * @param configs what updating the configs would do, null if configs aren't being updated
+     */
+    public record Instance(
+            String minecraftDir,
+            String side,
+            List<Change> add,
+            List<Change> upgrade,
+            List<Change> remove,
+            String configs
+    ) {
+    }
+
+    /**
+     * @param previousFileName the jar being replaced, for upgrades
+     * @param reason why a jar is removed
+     */
+    public record Change(String mod, String fileName, String previousFileName, String reason) {
+    }
+}
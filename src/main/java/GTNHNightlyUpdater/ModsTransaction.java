@@ -0,0 +1,211 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the new contents of a mods directory next to it and swaps it in with a rename, so the game never sees a
+ * half-updated mods directory. The directory it replaces is kept as {@code mods.previous} for {@link #rollback}.
+ * <p>
+ * Everything that stays is hard linked into the staging directory, so staging costs no extra disk space.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+public class ModsTransaction {
+    static final String STAGING_SUFFIX = ".staging";
+    static final String PREVIOUS_SUFFIX = ".previous";
+
+    private final Path modsDir;
+    private final Path staging;
+    private final Set<Path> removed;
+    private final List<Path> added = new ArrayList<>();
+
+    private ModsTransaction(Path modsDir, Set<Path> removed) {
+        this.modsDir = modsDir;
+        this.staging = sibling(modsDir, STAGING_SUFFIX);
+        this.removed = removed;
+    }
+
+    /**
+     * Starts a staging directory holding everything in {@code modsDir} except {@code removed}.
+     */
+    static ModsTransaction begin(Path modsDir, Set<Path> removed) throws IOException {
+        recover(modsDir);
+        // stage next to the real directory when mods is a symlink, the link keeps pointing at the swapped in one
+        val realModsDir = modsDir.toRealPath();
+        val transaction = new ModsTransaction(realModsDir, removed.stream()
+                .map(path -> realModsDir.resolve(modsDir.relativize(path).toString()))
+                .collect(Collectors.toSet()));
+        // left over from an interrupted run
+        deleteDirectory(transaction.staging);
+
+        try {
+            transaction.stageCurrent();
+        } catch (IOException e) {
+            transaction.abort();
+            throw e;
+        }
+        return transaction;
+    }
+
+    private void stageCurrent() throws IOException {
+        try (val paths = Files.walk(modsDir)) {
+            for (val path : (Iterable<Path>) paths::iterator) {
+                if (removed.contains(path)) {
+                    continue;
+                }
+                val target = staging.resolve(modsDir.relativize(path).toString());
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.createDirectories(target);
+                } else {
+                    link(path, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Installs {@code source} into the staging directory as {@code fileName}.
+     */
+    void add(InstallStrategy installStrategy, Path source, String fileName) throws IOException {
+        val target = staging.resolve(fileName);
+        installStrategy.install(source, target);
+        added.add(target);
+    }
+
+    /**
+     * Flushes the staging directory to disk and swaps it in. Where the mods directory can't be renamed, e.g. because
+     * it is a mount point, the changes are applied to it in place instead.
+     */
+    void commit() throws IOException {
+        for (val path : added) {
+            sync(path);
+        }
+        sync(staging);
+
+        val previous = sibling(modsDir, PREVIOUS_SUFFIX);
+        deleteDirectory(previous);
+        try {
+            Files.move(modsDir, previous, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("\tUnable to move {} aside, updating it in place: {}", modsDir, e.toString());
+            commitInPlace();
+            return;
+        }
+
+        try {
+            Files.move(staging, modsDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(previous, modsDir, StandardCopyOption.ATOMIC_MOVE);
+            throw e;
+        }
+        sync(modsDir.getParent());
+    }
+
+    void abort() throws IOException {
+        deleteDirectory(staging);
+    }
+
+    /**
+     * Swaps the previous mods directory back in; the one it replaces becomes the previous one.
+     *
+     * @return false if there is no previous mods directory
+     */
+    static boolean rollback(Path modsDir) throws IOException {
+        if (recover(modsDir)) {
+            return true;
+        }
+        val previous = sibling(modsDir, PREVIOUS_SUFFIX);
+        if (Files.notExists(previous)) {
+            return false;
+        }
+
+        val current = sibling(modsDir, ".rollback");
+        deleteDirectory(current);
+        Files.move(modsDir, current, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(previous, modsDir, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(current, previous, StandardCopyOption.ATOMIC_MOVE);
+        sync(modsDir.getParent());
+        return true;
+    }
+
+    /**
+     * Moves {@code mods.previous} back when a run was interrupted between the two renames of {@link #commit}, which
+     * leaves no mods directory at all. The staged directory is left for {@link #begin} to clear, the update is simply
+     * done again.
+     *
+     * @return true if the mods directory was restored
+     */
+    static boolean recover(Path modsDir) throws IOException {
+        // where mods is a symlink, the renamed directory is its target
+        val target = Files.isSymbolicLink(modsDir) ? modsDir.resolveSibling(Files.readSymbolicLink(modsDir)) : modsDir;
+        val previous = sibling(target, PREVIOUS_SUFFIX);
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) || Files.notExists(previous, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+
+        log.warn("\t{} is missing after an interrupted update, restoring it from {}", target, previous.getFileName());
+        Files.move(previous, target, StandardCopyOption.ATOMIC_MOVE);
+        sync(target.getParent());
+        return true;
+    }
+
+    /**
+     * Moves the added files into the mods directory and deletes the removed ones, what {@link #commit} falls back to.
+     */
+    void commitInPlace() throws IOException {
+        // add before deleting so there is never a moment without either version of a mod
+        for (val path : added) {
+            AtomicFiles.move(path, modsDir.resolve(path.getFileName().toString()));
+        }
+        for (val path : removed) {
+            Files.deleteIfExists(path);
+        }
+        abort();
+    }
+
+    private static Path sibling(Path modsDir, String suffix) {
+        return modsDir.resolveSibling(modsDir.getFileName() + suffix);
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(source, target, LinkOption.NOFOLLOW_LINKS, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static void sync(Path path) {
+        if (Files.isSymbolicLink(path)) {
+            return;
+        }
+        val directory = Files.isDirectory(path);
+        try (val channel = FileChannel.open(path, directory ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories can't be opened on Windows, where renames are durable anyway
+            log.debug("Unable to sync {}", path, e);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+}
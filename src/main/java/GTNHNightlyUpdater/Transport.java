@@ -0,0 +1,23 @@
+package GTNHNightlyUpdater;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+/**
+ * Sends every request the updater makes to the outside, so where they go can be changed in one place.
+ */
+public interface Transport extends AutoCloseable {
+    <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException;
+
+    @Override
+    void close();
+
+    /**
+     * @param upstreams base url to send requests for a host to instead, keyed by host
+     */
+    static Transport http(Map<String, String> upstreams) {
+        return new HttpTransport(upstreams);
+    }
+}
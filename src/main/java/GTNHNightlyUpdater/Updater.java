@@ -1,49 +1,49 @@
 package GTNHNightlyUpdater;
 
 import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Models.Manifest;
 import GTNHNightlyUpdater.Models.MavenSearch;
+import GTNHNightlyUpdater.Models.Snapshot;
+import GTNHNightlyUpdater.Models.UpdatePlan;
+import GTNHNightlyUpdater.Utils.AtomicFiles;
 import GTNHNightlyUpdater.Utils.NameSanitizer;
-import com.google.gson.internal.LinkedTreeMap;
+import GTNHNightlyUpdater.Utils.Tasks;
 import lombok.Cleanup;
 import lombok.extern.log4j.Log4j2;
 import lombok.val;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 @Log4j2(topic = "GTNHNightlyUpdater")
 public class Updater {
-    private static final int KEEP_CACHED_FILES_COUNT = 10;
+    private static final int KEEP_SNAPSHOTS_COUNT = 10;
+    // what lwjgl3ify's extra assets are cached as, next to its jar and named after it
+    static final String MULTIMC_ZIP_SUFFIX = "-multimc.zip";
+    static final String FORGE_PATCHES_SUFFIX = "-forgePatches.jar";
 
     private final Main.Options options;
+    private final Path cacheDir;
+    private JarIndex jarIndex;
 
-    public Updater(Main.Options options) {
+    public Updater(Main.Options options, Path cacheDir) {
         this.options = options;
+        this.cacheDir = cacheDir;
     }
 
     void addLocalAssets(Assets.Asset assets, Path localAssets) throws IOException {
@@ -54,183 +54,91 @@ public class Updater {
             val side = split.length > 1 ? split[1].trim() : "BOTH";
             Assets.Mod mod = new Assets.Mod(modName, null, new ArrayList<>());
             mod.setSide(side);
-            assets.getMods().add(mod);
+            assets.addMod(mod);
         }
     }
 
-    void updateModpackMods(Assets.Asset assets, Path modCacheDir, Set<String> modExclusions, Main.Options.Instance.InstanceConfig instanceConfig) throws IOException {
+    void updateModpackMods(Assets.Asset assets, Path modCacheDir, Set<String> modExclusions, Main.Options.Instance.InstanceConfig instanceConfig) throws IOException, InterruptedException {
         var minecraftModsDir = instanceConfig.getMinecraftDir().resolve("mods");
-        val packMods = this.gatherExistingMods(minecraftModsDir);
-        log.info("Updating modpack jars");
-
-        val keptMods = new TreeSet<String>();
-        var mods = assets.getMods();
-        mods.sort(Comparator.comparing(a -> a.getName().toLowerCase()));
-        for (val mod : mods.reversed()) {
-            if (mod.getVersions() == null || mod.getVersions().isEmpty()) {
-                continue;
-            }
-            if (mod.getSide() != null && mod.getSide().equals("NONE")) {
-                for (val version : mod.getVersions()) {
-                    if (packMods.containsKey(version.getGithubName())) {
-                        log.info("\tDeleting mod with side of NONE: {} - {}", mod.getName(), version.getGithubName());
-                        Files.deleteIfExists(packMods.get(version.getGithubName()));
-                        packMods.remove(version.getGithubName());
-                    }
-                    if (packMods.containsKey(version.getFileName())) {
-                        log.info("\tDeleting mod with side of NONE: {} - {}", mod.getName(), version.getFileName());
-                        Files.deleteIfExists(packMods.get(version.getFileName()));
-                        packMods.remove(version.getFileName());
-                    }
-                }
-                continue;
-            }
-
-            // side being null == BOTH
-            val modSide = mod.getSide() != null ? mod.getSide().split("_")[0] : "BOTH";
-            if (mod.getSide() != null && !(modSide.equalsIgnoreCase(String.valueOf(instanceConfig.side)) || modSide.equalsIgnoreCase("BOTH"))) {
-                continue;
-            }
-
-
-            if (modExclusions.contains(mod.getName())) {
-                for (val version : mod.getVersions()) {
-                    if (version.getGithubName() != null && packMods.containsKey(version.getGithubName())) {
-                        log.info("\tDeleting excluded mod: {} - {}", mod.getName(), version.getGithubName());
-                        Files.deleteIfExists(packMods.get(version.getGithubName()));
-                        packMods.remove(version.getGithubName());
-                        break;
-                    }
-                    if (packMods.containsKey(version.getFileName())) {
-                        log.info("\tDeleting excluded mod: {} - {}", mod.getName(), version.getFileName());
-                        Files.deleteIfExists(packMods.get(version.getFileName()));
-                        packMods.remove(version.getFileName());
-                        break;
-                    }
-                }
-                continue;
-            }
-
-            Assets.Version modVersionToUse = mod.getVersions().stream()
-                    .filter(v -> v.getVersion().equals(mod.getLatestVersion()))
-                    .findFirst()
-                    .orElse(null);
-
-            if (modVersionToUse == null) {
-                log.warn("\tUnable to determine mod version for {}", mod.getName());
-                continue;
-            }
-
-            if (modVersionToUse.getCachePath() == null) {
-                log.warn("\tUnable to get cached path for {}", mod.getName());
-                continue;
-            }
-
-            String newModFileName = modVersionToUse.getCachePath().getFileName().toString();
-
-            Path modCacheLocation = modVersionToUse.getCachePath();
-
-            if (Files.notExists(modCacheLocation)) {
-                log.warn("\tSkipping {} - File not found: '{}'", mod.getName(), modCacheLocation);
-                continue;
-            }
-
-            String oldFileName = null;
-
-            // delete older versions
-            for (val oldVersion : mod.getVersions()) {
-                if (oldVersion.getVersion().equals(modVersionToUse.getVersion())) {
-                    continue;
-                }
-                for (Iterator<Map.Entry<String, Path>> iterator = packMods.entrySet().iterator(); iterator.hasNext(); ) {
-                    boolean deleted = false;
-                    Map.Entry<String, Path> entry = iterator.next();
-                    if (entry.getValue().getFileName().toString().equals(oldVersion.getFileName()) && !keptMods.contains(entry.getKey())) {
-                        Files.deleteIfExists(entry.getValue());
-                        oldFileName = oldVersion.getFileName();
-                        iterator.remove();
-                        deleted = true;
-                    }
-                    if (entry.getValue().getFileName().toString().equals(oldVersion.getGithubName()) && !keptMods.contains(entry.getKey())) {
-                        Files.deleteIfExists(entry.getValue());
-                        oldFileName = oldVersion.getGithubName();
-                        if (!deleted) {
-                            iterator.remove();
-                        }
-                    }
-                }
-            }
-
-            // delete non-matching versions to handle local builds (usually -pre, but not name changes)
-            Pattern versionPattern = Pattern.compile(escapeQuotes(newModFileName).replace(escapeQuotes(modVersionToUse.getVersion()), ".*"), Pattern.CASE_INSENSITIVE);
-            Pattern versionPattern_OldName = Pattern.compile(escapeQuotes(modVersionToUse.getGithubName()).replace(escapeQuotes(modVersionToUse.getVersion()), ".*"), Pattern.CASE_INSENSITIVE);
-
-            for (Iterator<Map.Entry<String, Path>> iterator = packMods.entrySet().iterator(); iterator.hasNext(); ) {
-                Map.Entry<String, Path> entry = iterator.next();
-                if (!entry.getKey().toString().equals(newModFileName) && versionPattern.matcher(entry.getKey()).matches() && !keptMods.contains(entry.getKey())) {
-                    Files.deleteIfExists(entry.getValue());
-                    oldFileName = entry.getValue().getFileName().toString();
-                    iterator.remove();
-                    continue;
-                }
-                if (!entry.getKey().toString().equals(newModFileName) && versionPattern_OldName.matcher(entry.getKey()).matches() && !keptMods.contains(entry.getKey())) {
-                    Files.deleteIfExists(entry.getValue());
-                    oldFileName = entry.getValue().getFileName().toString();
-                    iterator.remove();
-                    continue;
-                }
-                if (!entry.getKey().toString().equals(newModFileName) && newModFileName.equals("+"+entry.getKey().toString()) && !keptMods.contains(entry.getKey())) {
-                    Files.deleteIfExists(entry.getValue());
-                    oldFileName = entry.getValue().getFileName().toString();
-                    iterator.remove();
-                    continue;
-                }
-            }
+        if (!options.dryRun) {
+            // plan against the directory the last update replaced, not a missing one
+            ModsTransaction.recover(minecraftModsDir);
+        }
+        val desiredHash = InstanceState.desiredHash(assets, modExclusions, instanceConfig.side, instanceConfig.getInstallStrategy());
+        val state = InstanceState.read(instanceConfig.getMinecraftDir());
+        if (state != null && state.isCurrent(assets.getLatestNightly(), desiredHash, InstanceState.installedJars(minecraftModsDir))) {
+            log.info("Modpack jars are up to date with nightly {}", assets.getLatestNightly());
+            return;
+        }
 
-            keptMods.add(newModFileName);
+        Map<String, Path> packMods;
+        ModReconciler.Plan plan;
+        try (val timer = Metrics.time("reconcile")) {
+            packMods = this.gatherExistingMods(minecraftModsDir);
+            log.info("Updating modpack jars");
 
-            Path modDest = minecraftModsDir.resolve(newModFileName);
+            val jars = jarIndex().identify(jarsToIdentify(assets, packMods), !options.dryRun);
+            plan = ModReconciler.plan(assets, modExclusions, instanceConfig.side, minecraftModsDir, packMods, version -> Files.exists(version.getCachePath()), jars);
+        }
+        plan.log();
+        if (options.dryRun) {
+            log.info("\tDry run, leaving {} untouched", minecraftModsDir);
+            return;
+        }
+        applyPlan(plan, instanceConfig);
 
-            if (Files.exists(modDest)) continue;
+        if (!plan.unavailable().isEmpty()) {
+            // try again next run, once the missing mods are cached
+            InstanceState.delete(instanceConfig.getMinecraftDir());
+            return;
+        }
+        new InstanceState(assets.getLatestNightly(), desiredHash, InstanceState.installedJars(minecraftModsDir))
+                .write(instanceConfig.getMinecraftDir());
+    }
 
-            if (oldFileName != null) {
-                log.info("\tUpgrading {} - {} -> {}", mod.getName(), oldFileName, newModFileName);
-            } else {
-                log.info("\tNew Mod {} - {}", mod.getName(), newModFileName);
-            }
+    private void applyPlan(ModReconciler.Plan plan, Main.Options.Instance.InstanceConfig instanceConfig) throws IOException, InterruptedException {
+        if (plan.isEmpty()) {
+            return;
+        }
 
-            if (instanceConfig.isUseSymlinks()) {
-                Files.createSymbolicLink(modDest, modCacheLocation);
-            } else {
-                Files.copy(modCacheLocation, modDest);
-            }
-            packMods.put(newModFileName, modDest);
+        @Cleanup val timer = Metrics.time("apply");
+        val installStrategy = instanceConfig.getInstallStrategy();
+        val removed = plan.deletes().stream().map(ModReconciler.Delete::path).collect(Collectors.toSet());
+        val transaction = ModsTransaction.begin(plan.modsDir(), removed);
+        try {
+            for (val add : plan.adds()) {
+                transaction.add(installStrategy, add.source(), add.fileName());
+            }
+            transaction.commit();
+        } catch (IOException | RuntimeException e) {
+            transaction.abort();
+            throw e;
+        }
+        Metrics.installed(instanceConfig.getMinecraftDir(), installStrategy, plan.adds().size());
+        Metrics.deleted(instanceConfig.getMinecraftDir(), plan.deletes().size());
 
-            var extraAssets = modVersionToUse.getExtraAssets();
+        for (val add : plan.adds()) {
+            var extraAssets = add.version().getExtraAssets();
             if (extraAssets != null && extraAssets.size() > 0) {
-                if (mod.getName().equalsIgnoreCase("lwjgl3ify")) {
+                if (add.mod().getName().equalsIgnoreCase("lwjgl3ify")) {
                     Path rootMinecraftDir = instanceConfig.getMinecraftDir();
 
                     if (instanceConfig.side == Main.Options.Instance.InstanceConfig.Side.SERVER) {
-                        val forgePatches = extraAssets.stream().filter(a -> a.getFileName().toString().endsWith("-forgePatches.jar")).findFirst();
+                        val forgePatches = extraAssets.stream().filter(a -> a.getFileName().toString().endsWith(FORGE_PATCHES_SUFFIX)).findFirst();
 
                         if (forgePatches.isPresent()) {
                             val patchesFile = forgePatches.get();
-                            modDest = rootMinecraftDir.resolve("lwjgl3ify-forgePatches.jar");
-                            if (instanceConfig.isUseSymlinks()) {
-                                Files.createSymbolicLink(modDest, patchesFile);
-                            } else {
-                                Files.copy(patchesFile, modDest, StandardCopyOption.REPLACE_EXISTING);
-                            }
+                            installStrategy.install(patchesFile, rootMinecraftDir.resolve("lwjgl3ify-forgePatches.jar"));
                         }
                     } else if (instanceConfig.side == Main.Options.Instance.InstanceConfig.Side.CLIENT) {
-                        val zip = extraAssets.stream().filter(a -> a.getFileName().toString().endsWith("-multimc.zip")).findFirst();
+                        val zip = extraAssets.stream().filter(a -> a.getFileName().toString().endsWith(MULTIMC_ZIP_SUFFIX)).findFirst();
 
                         if (zip.isPresent()) {
                             val zipFile = zip.get();
 
                             // should be up one
-                            extractZip(zipFile, rootMinecraftDir.getParent());
+                            val result = new ZipExtractor(Runtime.getRuntime().availableProcessors()).extract(zipFile, "lwjgl3ify-multimc", rootMinecraftDir.getParent());
+                            log.info("\tExtracted {}: {} written, {} unchanged, {} removed", zipFile.getFileName(), result.written(), result.unchanged(), result.removed());
                         }
                     }
                 }
@@ -238,52 +146,113 @@ public class Updater {
         }
     }
 
-    private void extractZip(Path zipPath, Path targetDir) throws IOException {
-        // Ensure the target directory exists
-        if (!Files.exists(targetDir)) {
-            Files.createDirectories(targetDir);
-        }
+    /**
+     * Works out what an update would do to every instance without downloading anything or touching the instances.
+     * The server is only asked for the size of files that aren't cached yet.
+     */
+    UpdatePlan plan(Assets.Asset assets, Set<String> modExclusions, Path modCacheDir) throws IOException, InterruptedException {
+        log.info("Planning update");
+        val downloads = options.configsOnly ? Map.<Path, UpdatePlan.Download>of() : planDownloads(assets, modExclusions, modCacheDir);
+
+        val instances = new ArrayList<UpdatePlan.Instance>();
+        for (val instance : options.instances) {
+            val instanceConfig = instance.config;
+            val add = new ArrayList<UpdatePlan.Change>();
+            val upgrade = new ArrayList<UpdatePlan.Change>();
+            val remove = new ArrayList<UpdatePlan.Change>();
+            if (!options.configsOnly) {
+                val minecraftModsDir = instanceConfig.getMinecraftDir().resolve("mods");
+                val installed = gatherExistingMods(minecraftModsDir);
+                val plan = ModReconciler.plan(assets, modExclusions, instanceConfig.side, minecraftModsDir, installed,
+                        version -> Files.exists(version.getCachePath()) || downloads.containsKey(version.getCachePath()),
+                        // read only, planning leaves the cache as it is
+                        jarIndex().identify(jarsToIdentify(assets, installed), false));
+
+                val upgraded = new HashSet<String>();
+                for (val change : plan.adds()) {
+                    if (change.replaces() != null) {
+                        upgrade.add(new UpdatePlan.Change(change.mod().getName(), change.fileName(), change.replaces(), null));
+                        upgraded.add(change.replaces());
+                    } else {
+                        add.add(new UpdatePlan.Change(change.mod().getName(), change.fileName(), null, null));
+                    }
+                }
+                for (val change : plan.deletes()) {
+                    val fileName = change.path().getFileName().toString();
+                    if (!upgraded.contains(fileName)) {
+                        remove.add(new UpdatePlan.Change(change.modName(), fileName, null, change.reason().name()));
+                    }
+                }
+            }
 
-        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(zipPath))) {
-            ZipEntry entry;
+            String configs = null;
+            if (options.updateConfigs || options.configsOnly) {
+                configs = new ConfigUpdater(instanceConfig.getMinecraftDir().toFile(), cacheDir.toFile(), assets.getConfigTag(), options.configThreads).status().name();
+            }
+            log.info("\t{}: {} new, {} upgraded, {} removed, configs {}", instanceConfig.getMinecraftDir(), add.size(), upgrade.size(), remove.size(), configs);
+            instances.add(new UpdatePlan.Instance(instanceConfig.getMinecraftDir().toString(), String.valueOf(instanceConfig.side), add, upgrade, remove, configs));
+        }
 
-            while ((entry = zis.getNextEntry()) != null) {
-                Path resolvedPath = targetDir.resolve(entry.getName()).normalize();
+        val sortedDownloads = downloads.values().stream()
+                .sorted(Comparator.comparing(download -> download.mod().toLowerCase()))
+                .toList();
+        val downloadBytes = sortedDownloads.stream().mapToLong(UpdatePlan.Download::size).sum();
+        log.info("\t{} files to download, {} bytes", sortedDownloads.size(), downloadBytes);
+        return new UpdatePlan(String.valueOf(options.targetManifest), assets.getLatestNightly(), assets.getConfigTag(), downloadBytes, sortedDownloads, instances);
+    }
 
-                // Prevent Zip Slip vulnerability
-                if (!resolvedPath.startsWith(targetDir)) {
-                    throw new IOException("Entry is outside the target dir: " + entry.getName());
-                }
+    /**
+     * @return the mods {@link #cacheMods} would download, keyed by their cache path
+     */
+    private Map<Path, UpdatePlan.Download> planDownloads(Assets.Asset assets, Set<String> modExclusions, Path modCacheDir) throws IOException, InterruptedException {
+        @Cleanup Downloader downloader = newDownloader();
+        val downloads = new ConcurrentHashMap<Path, UpdatePlan.Download>();
+        val tasks = new ArrayList<Callable<Void>>();
+        for (val mod : assets.getMods()) {
+            if ((mod.getSide() != null && mod.getSide().equals("NONE")) || mod.getVersions().isEmpty() || modExclusions.contains(mod.getName())) {
+                continue;
+            }
 
-                if (entry.isDirectory()) {
-                    if (Files.exists(resolvedPath)) {
-                        FileUtils.deleteDirectory(resolvedPath.toFile());
-                    }
-                    Files.createDirectories(resolvedPath);
-                } else {
-                    // Ensure parent directories exist
-                    if (!Files.exists(resolvedPath.getParent())) {
-                        Files.createDirectories(resolvedPath.getParent());
-                    }
+            val version = mod.getLatest();
+            if (version == null) {
+                continue;
+            }
+            val targetPath = cachePath(mod, version, modCacheDir);
+            version.setCachePath(targetPath);
+            if (Files.exists(targetPath)) {
+                continue;
+            }
+            if (options.offline) {
+                log.warn("\t{} {} is not cached", mod.getName(), version.getVersion());
+                continue;
+            }
 
-                    // Overwrite file if it exists
-                    try (OutputStream os = Files.newOutputStream(resolvedPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                        byte[] buffer = new byte[4096];
-                        int bytesRead;
-                        while ((bytesRead = zis.read(buffer)) != -1) {
-                            os.write(buffer, 0, bytesRead);
-                        }
-                    }
+            tasks.add(() -> {
+                var downloadURL = downloadUrl(mod, version);
+                var size = downloader.size(downloadURL);
+                if (size < 0 && mod.getSource() == null) {
+                    downloadURL = expandedDownloadUrl(mod, version);
+                    size = downloader.size(downloadURL);
                 }
-
-                zis.closeEntry();
-            }
+                if (size < 0) {
+                    log.warn("\tUnable to find {} {}", mod.getName(), version.getVersion());
+                    return null;
+                }
+                downloads.put(targetPath, new UpdatePlan.Download(mod.getName(), version.getVersion(), targetPath.getFileName().toString(), downloadURL, size));
+                return null;
+            });
         }
+        Tasks.runAll(tasks);
+        return downloads;
     }
 
-    void cacheMods(Assets.Asset asset, Set<String> modExclusions, Path modCacheDir) throws IOException, InterruptedException {
+    void cacheMods(Assets.Asset asset, Set<String> modExclusions, Path modCacheDir, CacheManager cacheManager) throws IOException, InterruptedException {
+        @Cleanup val timer = Metrics.time("download");
         log.info("Caching mods");
-        @Cleanup HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+        // offline, only what is already cached can be installed
+        @Cleanup Downloader downloader = options.offline ? null : newDownloader();
+        val store = new ContentStore(modCacheDir.resolveSibling("store"));
+        val tasks = new ArrayList<Callable<Void>>();
         for (val mod : asset.getMods()) {
             if ((mod.getSide() != null && mod.getSide().equals("NONE")) || mod.getVersions().isEmpty()) {
                 continue;
@@ -293,294 +262,372 @@ public class Updater {
                 continue;
             }
 
-            Assets.Version modVersionToUse;
-
-            val nightlyMod = mod.getVersions().stream().filter(v -> v.getVersion().equals(mod.getLatestVersion())).findFirst();
-            if (nightlyMod.isPresent()) {
-                modVersionToUse = nightlyMod.get();
-            } else {
-                log.warn("\tUnable to find version of {}: {}", mod.getName(), mod.getLatestVersion());
-                continue;
-            }
+            tasks.add(() -> {
+                cacheMod(mod, modCacheDir, downloader, store, cacheManager);
+                return null;
+            });
+        }
+        Tasks.runAll(tasks);
+        cacheManager.saveUsage();
+    }
 
-            String fileName = NameSanitizer.sanitizeFileNameWithExtension(modVersionToUse.getFileName(), "");
-            Path targetPath = modCacheDir.resolve(NameSanitizer.sanitizeComponent(mod.getName(), "")).resolve(fileName);
-            if (Files.notExists(targetPath.getParent())) {
-                Files.createDirectory(targetPath.getParent());
-            }
+    private static void cacheMod(Assets.Mod mod, Path modCacheDir, Downloader downloader, ContentStore store, CacheManager cacheManager) throws IOException, InterruptedException {
+        val modVersionToUse = mod.getLatest();
+        if (modVersionToUse == null) {
+            log.warn("\tUnable to find version of {}: {}", mod.getName(), mod.getLatestVersion());
+            return;
+        }
 
-            var cacheFiles = new File(targetPath.getParent().toString()).listFiles();
-            if (cacheFiles != null && cacheFiles.length > KEEP_CACHED_FILES_COUNT) {
-                log.info("\t[{}] Cleaning cache", mod.getName());
-                Arrays.sort(cacheFiles, Comparator.comparingLong(File::lastModified));
-                for (int i = 0; i < cacheFiles.length - KEEP_CACHED_FILES_COUNT; i++) {
-                    if (cacheFiles[i].isFile()) {
-                        boolean deleted = cacheFiles[i].delete();
-                        if (deleted) {
-                            log.info("\t\tDeleted {}", cacheFiles[i].getName());
-                        } else {
-                            log.info("\t\tFailed to Delete {}", cacheFiles[i].getName());
-                        }
+        Path targetPath = cachePath(mod, modVersionToUse, modCacheDir);
+        String fileName = targetPath.getFileName().toString();
+        Files.createDirectories(targetPath.getParent());
 
-                    }
-                }
-            }
+        // move from root mods dir to named directory
+        if (Files.exists(modCacheDir.resolve(fileName))) {
+            Files.move(modCacheDir.resolve(fileName), targetPath);
+        }
 
-            // move from root mods dir to named directory
-            if (Files.exists(modCacheDir.resolve(fileName))) {
-                Files.move(modCacheDir.resolve(fileName), targetPath);
-            }
+        modVersionToUse.setCachePath(targetPath);
 
-            modVersionToUse.setCachePath(targetPath);
+        if (store.verify(targetPath, modVersionToUse.getSha256())) {
+            Metrics.cacheHit();
+            cacheManager.markUsed(targetPath);
+            getExtraAssets(mod, modVersionToUse, downloader, store, cacheManager, targetPath);
+            return;
+        }
+        Metrics.cacheMiss();
+        if (downloader == null) {
+            log.warn("\t{} {} is not cached", mod.getName(), modVersionToUse.getVersion());
+            return;
+        }
 
-            if (Files.exists(targetPath)) {
-                getExtraAssets(mod, modVersionToUse, client, targetPath);
-                continue;
-            }
+        log.info("\t{}", mod.getName());
 
-            log.info("\t{}", mod.getName());
+        String downloadURL = downloadUrl(mod, modVersionToUse);
 
-            String downloadURL = modVersionToUse.getBrowserDownloadUrl();
+        val start = System.nanoTime();
+        var downloaded = download(downloader, store, downloadURL, targetPath, modVersionToUse.getSha256());
 
-            // force maven download for private repos
-            if (mod.isPrivate()) {
-                downloadURL = String.format(
-                        "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets/download?repository=public&group=com.github.GTNewHorizons&name=%s&maven.extension=jar&maven.classifier&version=%s",
-                        mod.getName(),
-                        modVersionToUse.getVersion()
-                );
+        if (!downloaded) {
+            log.warn("\tFailed to fetch jar: {}", downloadURL);
+            log.warn("\tExpanding maven search");
+            if (mod.getSource() == null) {
+                downloadURL = expandedDownloadUrl(mod, modVersionToUse);
+                downloaded = download(downloader, store, downloadURL, targetPath, modVersionToUse.getSha256());
             }
+        }
 
-            var downloadBytes = downloadFile(downloadURL, client);
-
-            if (downloadBytes == null) {
-                log.warn("\tFailed to fetch jar: {}", downloadURL);
-                log.warn("\tExpanding maven search");
-                if (mod.getSource() == null) {
-                    downloadURL = String.format(
-                            "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets/download?repository=public&name=%s&maven.extension=jar&maven.classifier&version=%s",
-                            mod.getName(),
-                            modVersionToUse.getVersion()
-                    );
-                    downloadBytes = downloadFile(downloadURL, client);
-                }
-            }
+        if (!downloaded) {
+            log.warn("\tFailed to fetch jar: {}", downloadURL);
+            return;
+        }
 
-            if (downloadBytes == null) {
-                log.warn("\tFailed to fetch jar: {}", downloadURL);
-                continue;
-            }
+        Metrics.downloaded(mod.getName(), System.nanoTime() - start, Files.size(targetPath));
+        cacheManager.markUsed(targetPath);
+        getExtraAssets(mod, modVersionToUse, downloader, store, cacheManager, targetPath);
+    }
 
-            Files.write(targetPath, downloadBytes);
+    static Path cachePath(Assets.Mod mod, Assets.Version version, Path modCacheDir) {
+        String fileName = NameSanitizer.sanitizeFileNameWithExtension(version.getFileName(), "");
+        return modCacheDir.resolve(NameSanitizer.sanitizeComponent(mod.getName(), "")).resolve(fileName);
+    }
 
-            getExtraAssets(mod, modVersionToUse, client, targetPath);
+    static String downloadUrl(Assets.Mod mod, Assets.Version version) {
+        // force maven download for private repos
+        if (mod.isPrivate()) {
+            return String.format(
+                    "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets/download?repository=public&group=com.github.GTNewHorizons&name=%s&maven.extension=jar&maven.classifier&version=%s",
+                    mod.getName(),
+                    version.getVersion()
+            );
         }
+        return version.getBrowserDownloadUrl();
+    }
+
+    static String expandedDownloadUrl(Assets.Mod mod, Assets.Version version) {
+        return String.format(
+                "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets/download?repository=public&name=%s&maven.extension=jar&maven.classifier&version=%s",
+                mod.getName(),
+                version.getVersion()
+        );
+    }
 
+    private static boolean download(Downloader downloader, ContentStore store, String downloadURL, Path targetPath, String expectedSha256) throws IOException, InterruptedException {
+        if (downloader == null) {
+            log.warn("\t{} is not cached", targetPath.getFileName());
+            return false;
+        }
+        return downloader.download(downloadURL, targetPath) && store.adopt(targetPath, expectedSha256);
     }
 
-    private static void getExtraAssets(Assets.Mod mod, Assets.Version modVersionToUse, HttpClient client, Path targetPath) throws IOException, InterruptedException {
+    private static void getExtraAssets(Assets.Mod mod, Assets.Version modVersionToUse, Downloader downloader, ContentStore store, CacheManager cacheManager, Path targetPath) throws IOException, InterruptedException {
         String downloadURL;
-        byte[] downloadBytes;
         if (mod.getName().equalsIgnoreCase("lwjgl3ify")) {
             if (modVersionToUse.getExtraAssets() == null) {
                 modVersionToUse.setExtraAssets(new ArrayList<>());
             }
 
-            targetPath = targetPath.resolveSibling(String.format("%s-%s-multimc.zip", mod.getName(), modVersionToUse.getVersion()));
-            if (!Files.exists(targetPath)) {
+            targetPath = targetPath.resolveSibling(String.format("%s-%s%s", mod.getName(), modVersionToUse.getVersion(), MULTIMC_ZIP_SUFFIX));
+            if (!store.verify(targetPath, null)) {
                 downloadURL = String.format(
                         "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets/download?repository=public&name=%s&maven.extension=zip&maven.classifier=multimc&version=%s",
                         mod.getName(),
                         modVersionToUse.getVersion()
                 );
 
-                downloadBytes = downloadFile(downloadURL, client);
-                if (downloadBytes == null) return;
-                Files.write(targetPath, downloadBytes);
+                if (!download(downloader, store, downloadURL, targetPath, null)) return;
             }
+            cacheManager.markUsed(targetPath);
             modVersionToUse.getExtraAssets().add(targetPath);
 
-            targetPath = targetPath.resolveSibling(String.format("%s-%s-forgePatches.jar", mod.getName(), modVersionToUse.getVersion()));
-            if (!Files.exists(targetPath)) {
+            targetPath = targetPath.resolveSibling(String.format("%s-%s%s", mod.getName(), modVersionToUse.getVersion(), FORGE_PATCHES_SUFFIX));
+            if (!store.verify(targetPath, null)) {
                 downloadURL = String.format(
                         "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets/download?repository=public&name=%s&maven.extension=jar&maven.classifier=forgePatches&version=%s",
                         mod.getName(),
                         modVersionToUse.getVersion()
                 );
 
-                downloadBytes = downloadFile(downloadURL, client);
-                if (downloadBytes == null) return;
-                Files.write(targetPath, downloadBytes);
+                if (!download(downloader, store, downloadURL, targetPath, null)) return;
             }
+            cacheManager.markUsed(targetPath);
             modVersionToUse.getExtraAssets().add(targetPath);
         }
     }
 
-    private static byte[] downloadFile(String downloadURL, HttpClient client) throws IOException, InterruptedException {
-        val request = HttpRequest.newBuilder()
-                .uri(URI.create(downloadURL))
-                .GET()
-                .build();
-        val response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
-        if (!(response.statusCode() == 200 || response.statusCode() == 302)) {
-            return null;
-        }
-        return response.body();
-    }
-
     void updateModsFromMaven(List<Assets.Mod> mods) throws IOException, InterruptedException {
+        @Cleanup val timer = Metrics.time("maven_search");
         log.info("Getting mod versions from maven");
-        @Cleanup HttpClient client = HttpClient.newHttpClient();
+        @Cleanup MetadataCache metadataCache = newMetadataCache();
+        // bounds the number of search requests in flight, not the number of mods being looked up
+        val permits = new Semaphore(Math.max(1, options.mavenThreads));
 
+        val tasks = new ArrayList<Callable<Void>>();
         for (val mod : mods) {
             // null source = our maven
             if (mod.getSource() != null || ((mod.getSide() != null && mod.getSide().equals("NONE")))) {
                 continue;
             }
 
-            log.info("\t{}", mod.getName());
+            tasks.add(() -> {
+                updateModFromMaven(mod, metadataCache, permits);
+                return null;
+            });
+        }
+        Tasks.runAll(tasks);
+    }
+
+    private void updateModFromMaven(Assets.Mod mod, MetadataCache metadataCache, Semaphore permits) throws IOException, InterruptedException {
+        log.info("\t{}", mod.getName());
 
-            String url = String.format(
-                    "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets?&sort=version&repository=public&name=%s&maven.extension=jar&maven.classifier",
-                    mod.getName()
-            );
-            var req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-            var resp = client.send(req, HttpResponse.BodyHandlers.ofString());
-
-            val mavenIndex = JsonParser.parse(resp.body(), MavenSearch.Index.class);
-            if (mavenIndex == null) {
+        String url = String.format(
+                "https://nexus.gtnewhorizons.com/service/rest/v1/search/assets?&sort=version&repository=public&name=%s&maven.extension=jar&maven.classifier",
+                mod.getName()
+        );
+
+        val mavenIndex = searchMaven(url, metadataCache, permits);
+        if (mavenIndex == null) {
+            log.warn("Unable to parse maven response for {}", mod.getName());
+            return;
+        }
+        var continuationToken = mavenIndex.continuationToken();
+        while (continuationToken != null) {
+            val tempMavenIndex = searchMaven(url + "&continuationToken=" + continuationToken, metadataCache, permits);
+            if (tempMavenIndex == null) {
                 log.warn("Unable to parse maven response for {}", mod.getName());
-                continue;
-            }
-            var continuationToken = mavenIndex.continuationToken();
-            while (continuationToken != null) {
-                req = HttpRequest.newBuilder()
-                        .uri(URI.create(url + "&continuationToken=" + continuationToken))
-                        .GET()
-                        .build();
-                resp = client.send(req, HttpResponse.BodyHandlers.ofString());
-                val tempMavenIndex = JsonParser.parse(resp.body(), MavenSearch.Index.class);
-                mavenIndex.items().addAll(tempMavenIndex.items());
-                continuationToken = tempMavenIndex.continuationToken();
+                break;
             }
+            mavenIndex.items().addAll(tempMavenIndex.items());
+            continuationToken = tempMavenIndex.continuationToken();
+        }
 
-            val versions = mavenIndex.items();
-            if (versions.size() == 0) {
-                log.warn("Unable to parse maven versions for {}", mod.getName());
-                continue;
-            }
+        val versions = mavenIndex.items();
+        if (versions.size() == 0) {
+            log.warn("Unable to parse maven versions for {}", mod.getName());
+            return;
+        }
+
+        versions.sort(Comparator.comparing(MavenSearch.Item::lastModified));
+        // Update or add versions
+        for (val version : versions) {
+            String versionString = version.maven2().version();
 
-            versions.sort(Comparator.comparing(MavenSearch.Item::lastModified));
-            // Update or add versions
-            for (val version : versions) {
-                String versionString = version.maven2().version();
-
-                String mavenFilename = FilenameUtils.getName(version.downloadUrl());
-
-                // Check if the version already exists
-                val existingVersion = mod.getVersions().stream()
-                        .filter(v -> v.getVersion().equals(versionString))
-                        .findFirst();
-
-                if (!existingVersion.isPresent()) {
-                    Assets.Version newVersion = new Assets.Version(
-                            versionString
-                    );
-                    newVersion.setBrowserDownloadUrl(version.downloadUrl());
-                    newVersion.setFileName(String.format("%s-%s.jar", mod.getName(), versionString));
-                    mod.getVersions().add(newVersion);
+            // Check if the version already exists
+            if (mod.getVersion(versionString) == null) {
+                Assets.Version newVersion = new Assets.Version(
+                        versionString
+                );
+                newVersion.setBrowserDownloadUrl(version.downloadUrl());
+                if (version.checksum() != null) {
+                    newVersion.setSha256(version.checksum().sha256());
                 }
+                newVersion.setFileName(String.format("%s-%s.jar", mod.getName(), versionString));
+                mod.addVersion(newVersion);
             }
+        }
 
-            // edge cases for mods
-            // reason: 0.55 -> 0.6+
-            if (mod.getName().equals("BlockLimiter")) {
-                mod.getVersions().removeIf(v -> v.getVersion().equals("0.55"));
-            }
+        // edge cases for mods
+        // reason: 0.55 -> 0.6+
+        if (mod.getName().equals("BlockLimiter")) {
+            mod.removeVersion("0.55");
+        }
 
-            if (mod.getVersions() != null && !mod.getVersions().isEmpty()) {
-                mod.getVersions().sort(Comparator.comparing(v -> new DefaultArtifactVersion(((Assets.Version) v).getVersion())).reversed());
+        if (mod.getVersions() != null && !mod.getVersions().isEmpty()) {
+            mod.getVersions().sort(Comparator.comparing(v -> new DefaultArtifactVersion(((Assets.Version) v).getVersion())).reversed());
 
-                mod.setLatestVersion(options.targetManifest == Main.Options.TargetManifest.DAILY ?
-                        mod.getVersions().stream().filter(v -> !v.getVersion().endsWith("-pre")).findFirst().get().getVersion() :
-                        mod.getVersions().getFirst().getVersion()
-                );
-            }
+            mod.setLatestVersion(options.targetManifest == Main.Options.TargetManifest.DAILY ?
+                    mod.getVersions().stream().filter(v -> !v.getVersion().endsWith("-pre")).findFirst().get().getVersion() :
+                    mod.getVersions().getFirst().getVersion()
+            );
+        }
+    }
 
+    private static MavenSearch.Index searchMaven(String url, MetadataCache metadataCache, Semaphore permits) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            val response = metadataCache.get(url);
+            if (response.statusCode() != 200) {
+                return null;
+            }
+            return JsonParser.parse(Files.readString(response.body()), MavenSearch.Index.class);
+        } finally {
+            permits.release();
         }
     }
 
+    private MetadataCache newMetadataCache() {
+        return newMetadataCache(Duration.ofMinutes(options.metadataTtl));
+    }
+
+    private MetadataCache newMetadataCache(Duration ttl) {
+        return new MetadataCache(Transport.http(options.upstreams), cacheDir.resolve("http"), ttl);
+    }
+
+    Downloader newDownloader() {
+        return new Downloader(Transport.http(options.upstreams), options.downloadThreads, options.hostLimits, options.downloadRetries, options.mirror);
+    }
+
     Assets.Asset fetchDAXXLAssets() throws IOException, InterruptedException {
+        if (options.mirror != null) {
+            return fetchMirroredAssets();
+        }
+        return fetchDAXXLAssets(options.targetManifest);
+    }
+
+    Assets.Asset fetchDAXXLAssets(Main.Options.TargetManifest targetManifest) throws IOException, InterruptedException {
+        return fetchDAXXLAssets(targetManifest, Duration.ofMinutes(options.metadataTtl));
+    }
+
+    /**
+     * @param ttl how long cached copies of the manifest and assets are used without contacting the server
+     */
+    Assets.Asset fetchDAXXLAssets(Main.Options.TargetManifest targetManifest, Duration ttl) throws IOException, InterruptedException {
         log.info("Fetching latest gtnh-assets.json");
 
-        @Cleanup HttpClient client = HttpClient.newHttpClient();
+        @Cleanup MetadataCache metadataCache = newMetadataCache(ttl);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://raw.githubusercontent.com/GTNewHorizons/DreamAssemblerXXL/refs/heads/master/gtnh-assets.json"))
-                .GET()
-                .build();
+        var response = metadataCache.get(String.format("https://raw.githubusercontent.com/GTNewHorizons/DreamAssemblerXXL/refs/heads/master/releases/manifests/%s.json", targetManifest.name().toLowerCase()));
+        if (response.statusCode() != 200) {
+            throw new IOException("Failed to fetch manifest file: HTTP " + response.statusCode());
+        }
+        Manifest manifest;
+        try (val reader = Files.newBufferedReader(response.body())) {
+            manifest = JsonParser.parse(reader, Manifest.class);
+        }
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        // the manifest is needed first, so only the versions it references are kept while streaming the assets
+        response = metadataCache.get("https://raw.githubusercontent.com/GTNewHorizons/DreamAssemblerXXL/refs/heads/master/gtnh-assets.json");
         if (response.statusCode() != 200) {
             throw new IOException("Failed to fetch assets file: HTTP " + response.statusCode());
         }
-        val asset = JsonParser.parse(response.body(), Assets.Asset.class);
+        try (val reader = Files.newBufferedReader(response.body())) {
+            return AssetsParser.parse(reader, manifest);
+        }
+    }
 
-        asset.getMods().parallelStream().forEach(mod -> {
-            // only non-gtnh mods
-            if (mod.getSource() != null) {
-                mod.getVersions().parallelStream().forEach(version -> {
-                    if (version.getDownloadUrl() != null) {
-                        version.setBrowserDownloadUrl(version.getDownloadUrl());
-                    }
-                });
+    /**
+     * Saves the resolved assets as the latest snapshot of the target manifest, which --offline applies, and under the
+     * nightly number, so the same nightly can be pinned with --snapshot later.
+     */
+    void saveSnapshot(Assets.Asset assets) throws IOException {
+        val snapshotDir = cacheDir.resolve("snapshots");
+        Files.createDirectories(snapshotDir);
+        val name = options.targetManifest.name().toLowerCase();
+        val json = JsonParser.toJson(Snapshot.of(options.targetManifest.name(), assets));
+        writeAtomically(snapshotDir.resolve(String.format("%s-%d.json", name, assets.getLatestNightly())), json);
+        writeAtomically(latestSnapshotPath(options.targetManifest), json);
+        log.info("Saved snapshot of nightly {}", assets.getLatestNightly());
+
+        // the numbered snapshots of older nightlies are only kept for a while
+        try (val paths = Files.list(snapshotDir)) {
+            val numbered = paths
+                    .filter(path -> path.getFileName().toString().matches(Pattern.quote(name) + "-\\d+\\.json"))
+                    .sorted(Comparator.comparingInt(Updater::snapshotNightly).reversed())
+                    .toList();
+            for (val path : numbered.subList(Math.min(KEEP_SNAPSHOTS_COUNT, numbered.size()), numbered.size())) {
+                Files.delete(path);
             }
-        });
+        }
+    }
 
-        request = HttpRequest.newBuilder()
-                .uri(URI.create(String.format("https://raw.githubusercontent.com/GTNewHorizons/DreamAssemblerXXL/refs/heads/master/releases/manifests/%s.json", options.targetManifest.name().toLowerCase())))
-                .GET()
-                .build();
-        response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        if (response.statusCode() != 200) {
-            throw new IOException("Failed to fetch manifest file: HTTP " + response.statusCode());
+    Path latestSnapshotPath(Main.Options.TargetManifest targetManifest) {
+        return cacheDir.resolve("snapshots").resolve(targetManifest.name().toLowerCase() + ".json");
+    }
+
+    static Snapshot readSnapshot(Path path) throws IOException {
+        if (Files.notExists(path)) {
+            throw new IOException(String.format("Snapshot not found: `%s`", path));
         }
-        val map = (LinkedTreeMap<String, Object>) JsonParser.parse(response.body(), Map.class);
+        log.info("Using snapshot {}", path);
+        try (val reader = Files.newBufferedReader(path)) {
+            return JsonParser.parse(reader, Snapshot.class);
+        }
+    }
 
-        asset.setConfigTag(map.get("config").toString());
+    private static int snapshotNightly(Path path) {
+        val fileName = path.getFileName().toString();
+        return Integer.parseInt(fileName.substring(fileName.lastIndexOf('-') + 1, fileName.length() - ".json".length()));
+    }
 
-        // set all sides to none; manifest will set the side
-        for (val mod : asset.getMods()) {
-            mod.setSide("NONE");
+    private static void writeAtomically(Path path, String content) throws IOException {
+        val temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, content);
+        AtomicFiles.move(temp, path);
+    }
 
-            String modName = mod.getName();
-            // Unimixins needs to loaded before all other mods
-            if (mod.getName().equals("UniMixins")) {
-                modName = "+" + modName;
-            }
-            for (Assets.Version version : mod.getVersions()) {
-                version.setFileName(String.format("%s-%s.jar", modName, version.getVersion()));
-            }
-        }
+    private Assets.Asset fetchMirroredAssets() throws IOException, InterruptedException {
+        val url = String.format("%s/assets/%s", options.mirror.replaceAll("/+$", ""), options.targetManifest.name().toLowerCase());
+        log.info("Fetching resolved assets from {}", url);
 
-        for (val mod : ((LinkedTreeMap<String, LinkedTreeMap<String, String>>) map.get("github_mods")).entrySet()) {
-            asset.getMods().stream().filter(m -> m.getName().equals(mod.getKey())).findFirst().ifPresent(m -> {
-                m.setSide(mod.getValue().get("side"));
-                m.setLatestVersion(mod.getValue().get("version"));
-            });
+        @Cleanup MetadataCache metadataCache = newMetadataCache();
+        val response = metadataCache.get(url);
+        if (response.statusCode() != 200) {
+            throw new IOException("Failed to fetch assets from mirror: HTTP " + response.statusCode());
+        }
+        try (val reader = Files.newBufferedReader(response.body())) {
+            return JsonParser.parse(reader, Snapshot.class).toAsset();
         }
+    }
 
-        for (val mod : ((LinkedTreeMap<String, LinkedTreeMap<String, String>>) map.get("external_mods")).entrySet()) {
-            asset.getMods().stream().filter(m -> m.getName().equals(mod.getKey())).findFirst().ifPresent(m -> {
-                m.setSide(mod.getValue().get("side"));
-                m.setLatestVersion(mod.getValue().get("version"));
-            });
+    private synchronized JarIndex jarIndex() throws IOException {
+        if (jarIndex == null) {
+            jarIndex = new JarIndex(cacheDir, Runtime.getRuntime().availableProcessors());
         }
+        return jarIndex;
+    }
 
-        return asset;
+    /**
+     * @return the installed jars and the cached jars of the versions to install, what the reconciler compares
+     */
+    private static List<Path> jarsToIdentify(Assets.Asset assets, Map<String, Path> installed) {
+        val jars = new ArrayList<>(installed.values());
+        for (val mod : assets.getMods()) {
+            val version = mod.getLatest();
+            if (version != null && version.getCachePath() != null) {
+                jars.add(version.getCachePath());
+            }
+        }
+        return jars;
     }
 
     Map<String, Path> gatherExistingMods(Path minecraftModsDir) throws IOException {
@@ -595,13 +642,4 @@ public class Updater {
                         TreeMap::new
                 ));
     }
-
-    static String escapeChars = "\\.?![]{}()<>*+-=^$|";
-
-    private String escapeQuotes(String str) {
-        if (str != null && str.length() > 0) {
-            return str.replaceAll("[\\W]", "\\\\$0"); // \W designates non-word characters
-        }
-        return "";
-    }
 }
@@ -0,0 +1,43 @@
+package GTNHNightlyUpdater.Utils;
+
+import lombok.val;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Tasks {
+    /**
+     * Runs every task on its own virtual thread and waits for all of them to finish.
+     * The first failure is rethrown once every task has completed.
+     */
+    public static void runAll(Collection<? extends Callable<?>> tasks) throws IOException, InterruptedException {
+        Throwable failure = null;
+        try (val executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            val futures = new ArrayList<Future<?>>(tasks.size());
+            for (val task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (val future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        }
+
+        if (failure == null) return;
+        if (failure instanceof IOException e) throw e;
+        if (failure instanceof InterruptedException e) throw e;
+        if (failure instanceof RuntimeException e) throw e;
+        if (failure instanceof Error e) throw e;
+        throw new IOException(failure);
+    }
+}
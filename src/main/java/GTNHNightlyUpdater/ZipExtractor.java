@@ -0,0 +1,223 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.AtomicFiles;
+import GTNHNightlyUpdater.Utils.Tasks;
+import com.google.gson.JsonParseException;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts archives into a directory and records what each one put there, in {@code .updater_extracted/<name>.json}.
+ * <p>
+ * Files that already match the archive entry are left alone: when size, CRC and modification time are the recorded
+ * ones without reading them, otherwise after comparing their CRC. Files an earlier version of the archive put there but
+ * this one doesn't have are removed; files the archive never produced are never touched.
+ * <p>
+ * Without a record, e.g. on the first run after updating from a version that didn't keep one, nothing is known about
+ * what is already there. The directories the archive has entries for are then cleared of files it doesn't have, as they
+ * used to be deleted and recreated on every extraction.
+ */
+@Log4j2(topic = "GTNHNightlyUpdater")
+class ZipExtractor {
+    static final String MANIFEST_DIR = ".updater_extracted";
+
+    private final int threads;
+
+    /**
+     * @param files extracted files by path relative to the target directory, with '/' separators
+     */
+    record Manifest(Map<String, Entry> files) {
+    }
+
+    /**
+     * @param modified modification time on disk after extraction, in milliseconds
+     */
+    record Entry(long size, long crc, long modified) {
+    }
+
+    record Result(int written, int unchanged, int removed) {
+    }
+
+    /**
+     * @param threads how many entries are checked or written at once
+     */
+    ZipExtractor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param name what the archive is tracked as, the same for all of its versions
+     */
+    Result extract(Path zipPath, String name, Path targetDir) throws IOException, InterruptedException {
+        val root = targetDir.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        val manifestPath = root.resolve(MANIFEST_DIR).resolve(name + ".json");
+        val recorded = readManifest(manifestPath);
+        val previous = recorded != null ? recorded : new Manifest(Map.of());
+        val directories = new ArrayList<Path>();
+        val files = new ConcurrentHashMap<String, Entry>();
+        val written = new AtomicInteger();
+        val unchanged = new AtomicInteger();
+
+        try (val zip = new ZipFile(zipPath.toFile())) {
+            val permits = new Semaphore(threads);
+            val tasks = new ArrayList<Callable<Void>>();
+            for (val entry : Collections.list(zip.entries())) {
+                val path = root.resolve(entry.getName()).normalize();
+
+                // Prevent Zip Slip vulnerability
+                if (!path.startsWith(root)) {
+                    throw new IOException("Entry is outside the target dir: " + entry.getName());
+                }
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(path);
+                    if (!path.equals(root)) {
+                        directories.add(path);
+                    }
+                    continue;
+                }
+
+                val key = key(root, path);
+                val recordedEntry = previous.files().get(key);
+                tasks.add(() -> {
+                    permits.acquire();
+                    try {
+                        if (matches(path, entry.getSize(), entry.getCrc(), recordedEntry)) {
+                            unchanged.incrementAndGet();
+                        } else {
+                            Files.createDirectories(path.getParent());
+                            try (val in = zip.getInputStream(entry)) {
+                                Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+                            }
+                            written.incrementAndGet();
+                        }
+                        files.put(key, new Entry(entry.getSize(), entry.getCrc(), Files.getLastModifiedTime(path).toMillis()));
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                });
+            }
+            Tasks.runAll(tasks);
+        }
+
+        int removed = 0;
+        for (val key : previous.files().keySet()) {
+            if (files.containsKey(key)) {
+                continue;
+            }
+            val path = root.resolve(key).normalize();
+            if (path.startsWith(root) && Files.deleteIfExists(path)) {
+                removed++;
+                deleteEmptyParents(path, root);
+            }
+        }
+        if (recorded == null) {
+            removed += removeUnextracted(directories, root, files.keySet());
+        }
+
+        Files.createDirectories(manifestPath.getParent());
+        val temp = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+        Files.writeString(temp, JsonParser.toJson(new Manifest(new TreeMap<>(files))));
+        AtomicFiles.move(temp, manifestPath);
+
+        return new Result(written.get(), unchanged.get(), removed);
+    }
+
+    /**
+     * @return whether {@code path} already holds the entry's content
+     */
+    private static boolean matches(Path path, long size, long crc, Entry recorded) throws IOException {
+        if (Files.notExists(path) || Files.size(path) != size) {
+            return false;
+        }
+        if (recorded != null && recorded.size() == size && recorded.crc() == crc && recorded.modified() == Files.getLastModifiedTime(path).toMillis()) {
+            return true;
+        }
+        val checksum = new CRC32();
+        try (val in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                checksum.update(buffer, 0, read);
+            }
+        }
+        return checksum.getValue() == crc;
+    }
+
+    /**
+     * Deletes the files under the archive's directories that it doesn't have.
+     *
+     * @return how many files were deleted
+     */
+    private static int removeUnextracted(List<Path> directories, Path root, Set<String> extracted) throws IOException {
+        int removed = 0;
+        for (val directory : directories) {
+            // emptied while clearing a directory it is in
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            List<Path> unextracted;
+            try (val paths = Files.walk(directory)) {
+                unextracted = paths.filter(Files::isRegularFile).filter(path -> !extracted.contains(key(root, path))).toList();
+            }
+            for (val path : unextracted) {
+                if (Files.deleteIfExists(path)) {
+                    log.info("	Removing {}, not part of the archive", root.relativize(path));
+                    removed++;
+                    deleteEmptyParents(path, directory);
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static String key(Path root, Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * @return the recorded manifest, or null if there is none or it can't be read
+     */
+    private static Manifest readManifest(Path path) throws IOException {
+        if (Files.notExists(path)) {
+            return null;
+        }
+        try {
+            val manifest = JsonParser.parse(Files.readString(path), Manifest.class);
+            return manifest != null && manifest.files() != null ? manifest : null;
+        } catch (JsonParseException e) {
+            log.warn("Ignoring unreadable {}", path);
+            return null;
+        }
+    }
+
+    private static void deleteEmptyParents(Path path, Path root) throws IOException {
+        for (var parent = path.getParent(); parent != null && !parent.equals(root); parent = parent.getParent()) {
+            try {
+                Files.delete(parent);
+            } catch (DirectoryNotEmptyException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import GTNHNightlyUpdater.Models.Manifest;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssetsParserTest {
+    private String assetsJson;
+    private Manifest manifest;
+    private Assets.Asset asset;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assetsJson = resource("assets/gtnh-assets.json");
+        manifest = JsonParser.parse(resource("assets/daily.json"), Manifest.class);
+        asset = AssetsParser.parse(new StringReader(assetsJson), manifest);
+    }
+
+    @Test
+    void readsNightlyNumbersAndConfigTag() {
+        assertEquals(500, asset.getLatestNightly());
+        assertEquals(499, asset.getLatestSuccessfulNightly());
+        assertEquals("2.8.0-nightly-500", asset.getConfigTag());
+    }
+
+    @Test
+    void keepsOnlyTheManifestVersion() {
+        val mod = mod("GT5-Unofficial");
+
+        assertEquals(1, mod.getVersions().size());
+        val version = mod.getVersions().getFirst();
+        assertEquals("5.09.50.01", version.getVersion());
+        assertEquals("GT5-Unofficial-5.09.50.01.jar", version.getFileName());
+        assertEquals("5.09.50.01", mod.getLatestVersion());
+        assertEquals("BOTH", mod.getSide());
+    }
+
+    @Test
+    void retiresOtherVersions() {
+        val mod = mod("GT5-Unofficial");
+
+        assertEquals(Set.of("GT5-Unofficial-5.09.50.02.jar", "gregtech-5.09.50.02.jar"), mod.getRetiredFileNames());
+        assertEquals(Set.of("GT5-Unofficial-5.09.50.02.jar", "gregtech-5.09.50.02.jar"), mod.getOtherFileNames(mod.getVersions().getFirst()));
+    }
+
+    @Test
+    void modsMissingFromTheManifestAreNotInstalled() {
+        val mod = mod("RemovedMod");
+
+        assertEquals("NONE", mod.getSide());
+        assertTrue(mod.getVersions().isEmpty());
+        assertEquals(Set.of("RemovedMod-1.0.jar", "removedmod-1.0.jar"), mod.getOtherFileNames(null));
+    }
+
+    @Test
+    void prefixesUniMixins() {
+        // its versions come before its name in the fixture
+        val mod = mod("UniMixins");
+
+        assertEquals("+UniMixins-0.1.19.jar", mod.getVersions().getFirst().getFileName());
+        assertTrue(mod.getRetiredFileNames().contains("+UniMixins-0.1.18.jar"));
+    }
+
+    @Test
+    void externalModsDownloadFromTheirSource() {
+        val version = mod("Baubles").getVersions().getFirst();
+
+        assertEquals("https://mediafilez.forgecdn.net/baubles.jar", version.getBrowserDownloadUrl());
+        assertEquals("https://github.com/gt-01.jar", mod("GT5-Unofficial").getVersions().getFirst().getBrowserDownloadUrl());
+    }
+
+    @Test
+    void matchesFullParse() {
+        val expected = fullParse();
+
+        assertEquals(expected.getMods().size(), asset.getMods().size());
+        for (val expectedMod : expected.getMods()) {
+            val mod = mod(expectedMod.getName());
+            assertEquals(expectedMod.getSide(), mod.getSide(), expectedMod.getName());
+            assertEquals(expectedMod.getLatestVersion(), mod.getLatestVersion(), expectedMod.getName());
+            assertEquals(expectedMod.getSource(), mod.getSource(), expectedMod.getName());
+            assertEquals(expectedMod.isPrivate(), mod.isPrivate(), expectedMod.getName());
+
+            val entry = manifest.getMod(expectedMod.getName());
+            val kept = expectedMod.getVersions().stream()
+                    .filter(version -> entry != null && version.getVersion().equals(entry.version()))
+                    .toList();
+            assertEquals(describe(kept), describe(mod.getVersions()), expectedMod.getName());
+
+            val otherNames = new HashSet<String>();
+            for (val version : expectedMod.getVersions()) {
+                if (!kept.contains(version)) {
+                    otherNames.add(version.getFileName());
+                    if (version.getGithubName() != null) {
+                        otherNames.add(version.getGithubName());
+                    }
+                }
+            }
+            assertEquals(otherNames, mod.getRetiredFileNames(), expectedMod.getName());
+        }
+    }
+
+    /**
+     * The whole-document parse the streaming parser replaced.
+     */
+    private Assets.Asset fullParse() {
+        val expected = JsonParser.parse(assetsJson, Assets.Asset.class);
+        for (val mod : expected.getMods()) {
+            mod.setSide("NONE");
+            val modName = mod.getName().equals("UniMixins") ? "+" + mod.getName() : mod.getName();
+            for (val version : mod.getVersions()) {
+                version.setFileName(String.format("%s-%s.jar", modName, version.getVersion()));
+                if (mod.getSource() != null && version.getDownloadUrl() != null) {
+                    version.setBrowserDownloadUrl(version.getDownloadUrl());
+                }
+            }
+            val entry = manifest.getMod(mod.getName());
+            if (entry != null) {
+                mod.setSide(entry.side());
+                mod.setLatestVersion(entry.version());
+            }
+        }
+        return expected;
+    }
+
+    private static List<String> describe(List<Assets.Version> versions) {
+        // Gson leaves the transient fields of the full parse unset, so only the parsed ones are compared
+        return versions.stream()
+                .map(v -> String.join(" ", v.getVersion(), v.getFileName(), v.getGithubName(), v.getDownloadUrl(), v.getBrowserDownloadUrl()))
+                .toList();
+    }
+
+    private Assets.Mod mod(String name) {
+        return asset.getMods().stream().filter(mod -> mod.getName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static String resource(String name) throws IOException {
+        try (val in = AssetsParserTest.class.getClassLoader().getResourceAsStream(name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheManagerTest {
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void dryRunChangesNothing() throws IOException {
+        val stale = cached("Old/Old-1.0.jar", 100, 60);
+        val installed = cached("Used/Used-1.0.jar", 100, 60);
+        val instance = instanceWith("Used-1.0.jar");
+        val manager = new CacheManager(cacheDir, new CacheManager.Policy(0, Duration.ofDays(30)));
+
+        manager.registerInstance(instance, true);
+        val result = manager.collect(true);
+
+        assertEquals(1, result.removed());
+        assertEquals(100, result.reclaimedBytes());
+        assertTrue(Files.exists(stale));
+        assertTrue(Files.exists(installed));
+        assertFalse(Files.exists(cacheDir.resolve("usage.json")));
+        assertFalse(Files.exists(cacheDir.resolve("instances.json")));
+    }
+
+    @Test
+    void removesExpiredFilesWithTheirSidecars() throws IOException {
+        val stale = cached("Old/Old-1.0.jar", 100, 60);
+        val record = Files.writeString(stale.resolveSibling("Old-1.0.jar" + ContentStore.RECORD_EXTENSION), "record");
+        val part = Files.writeString(Downloader.partPath(stale), "partial");
+        val fresh = cached("New/New-1.0.jar", 100, 1);
+        val manager = new CacheManager(cacheDir, new CacheManager.Policy(0, Duration.ofDays(30)));
+
+        val result = manager.collect(false);
+
+        // sidecars are neither counted nor removed on their own
+        assertEquals(1, result.removed());
+        assertEquals(200, result.totalBytes());
+        assertFalse(Files.exists(stale));
+        assertFalse(Files.exists(record));
+        assertFalse(Files.exists(part));
+        assertFalse(Files.exists(stale.getParent()));
+        assertTrue(Files.exists(fresh));
+    }
+
+    @Test
+    void keepsFilesRegisteredInstancesUse() throws IOException {
+        val installed = cached("Used/Used-1.0.jar", 100, 60);
+        val instance = instanceWith("Used-1.0.jar");
+        new CacheManager(cacheDir, new CacheManager.Policy(0, Duration.ofDays(30))).registerInstance(instance, false);
+
+        // a later run that doesn't update the instance still knows about it
+        val result = new CacheManager(cacheDir, new CacheManager.Policy(0, Duration.ofDays(30))).collect(false);
+
+        assertEquals(0, result.removed());
+        assertTrue(Files.exists(installed));
+    }
+
+    @Test
+    void keepsExtraAssetsOfInstalledJars() throws IOException {
+        val jar = cached("lwjgl3ify/lwjgl3ify-2.1.5.jar", 100, 60);
+        val zip = cached("lwjgl3ify/lwjgl3ify-2.1.5-multimc.zip", 100, 60);
+        val patches = cached("lwjgl3ify/lwjgl3ify-2.1.5-forgePatches.jar", 100, 60);
+        val oldZip = cached("lwjgl3ify/lwjgl3ify-2.1.4-multimc.zip", 100, 60);
+        val manager = new CacheManager(cacheDir, new CacheManager.Policy(0, Duration.ofDays(30)));
+        manager.registerInstance(instanceWith("lwjgl3ify-2.1.5.jar"), false);
+
+        val result = manager.collect(false);
+
+        assertEquals(1, result.removed());
+        assertTrue(Files.exists(jar));
+        assertTrue(Files.exists(zip));
+        assertTrue(Files.exists(patches));
+        assertFalse(Files.exists(oldZip));
+    }
+
+    @Test
+    void removesLeastRecentlyUsedOverBudget() throws IOException {
+        val oldest = cached("A/A-1.0.jar", 100, 3);
+        val older = cached("B/B-1.0.jar", 100, 2);
+        val newest = cached("C/C-1.0.jar", 100, 1);
+        val manager = new CacheManager(cacheDir, new CacheManager.Policy(150, Duration.ofDays(-1)));
+
+        val result = manager.collect(false);
+
+        assertEquals(2, result.removed());
+        assertFalse(Files.exists(oldest));
+        assertFalse(Files.exists(older));
+        assertTrue(Files.exists(newest));
+    }
+
+    @Test
+    void keepsFilesTheRunningUpdateWants() throws IOException {
+        val wanted = cached("Old/Old-1.0.jar", 100, 60);
+        val manager = new CacheManager(cacheDir, new CacheManager.Policy(0, Duration.ofDays(30)));
+
+        manager.markUsed(wanted);
+        manager.collect(false);
+
+        assertTrue(Files.exists(wanted));
+    }
+
+    private Path cached(String name, int size, int daysUnused) throws IOException {
+        val path = cacheDir.resolve("mods").resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, new byte[size]);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - daysUnused * DAY));
+        return path;
+    }
+
+    private Path instanceWith(String... mods) throws IOException {
+        val instance = Files.createDirectories(cacheDir.resolve("instance"));
+        val modsDir = Files.createDirectories(instance.resolve("mods"));
+        for (val mod : List.of(mods)) {
+            Files.writeString(modsDir.resolve(mod), "installed");
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,194 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigUpdaterTest {
+    @TempDir
+    Path root;
+
+    private Path upstream;
+    private Path cacheDir;
+    private InputStream stdin;
+
+    @BeforeEach
+    void setUp() throws IOException, GitAPIException, URISyntaxException {
+        stdin = System.in;
+        upstream = root.resolve("upstream");
+        try (val git = Git.init().setDirectory(upstream.toFile()).setInitialBranch("master").call()) {
+            write(upstream.resolve("config/a.cfg"), "a1\n");
+            write(upstream.resolve("config/b.cfg"), "b1\n");
+            write(upstream.resolve("other/x.txt"), "x1\n");
+            commit(git, "v1");
+            write(upstream.resolve("config/a.cfg"), "a2\n");
+            write(upstream.resolve("other/x.txt"), "x2\n");
+            commit(git, "v2");
+        }
+
+        // the shared repo pointed at the local upstream instead of GitHub
+        cacheDir = root.resolve("cache");
+        try (val git = Git.init().setBare(true).setDirectory(cacheDir.resolve("configs.git").toFile()).call()) {
+            git.remoteAdd().setName("origin").setUri(new URIish(upstream.toUri().toString())).call();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setIn(stdin);
+    }
+
+    @Test
+    void firstRunReplacesConfigsFromWorktree() throws IOException {
+        val instance = instance("one");
+        write(instance.resolve("config/mine.cfg"), "mine\n");
+
+        run(instance, "v1");
+
+        val worktree = instance.resolve(".updater_pack_configs");
+        assertEquals(List.of(".git", "config"), list(worktree));
+        assertTrue(Files.isRegularFile(worktree.resolve(".git")), "a worktree of the shared repo, not a clone");
+        assertEquals(List.of("a.cfg", "b.cfg"), list(instance.resolve("config")));
+        assertEquals("mine\n", Files.readString(instance.resolve("config_backup_updater/mine.cfg")));
+    }
+
+    @Test
+    void updateKeepsPlayerChangesAndMergesUpstream() throws IOException {
+        val instance = instance("one");
+        run(instance, "v1");
+        write(instance.resolve("config/b.cfg"), "b1 changed by the player\n");
+        write(instance.resolve("config/new.cfg"), "new\n");
+
+        run(instance, "v2");
+
+        assertEquals("a2\n", Files.readString(instance.resolve("config/a.cfg")));
+        assertEquals("b1 changed by the player\n", Files.readString(instance.resolve("config/b.cfg")));
+        assertEquals("new\n", Files.readString(instance.resolve("config/new.cfg")));
+        // the merge brought in other/x.txt, which stays out of the worktree
+        assertEquals(List.of(".git", "config"), list(instance.resolve(".updater_pack_configs")));
+        assertEquals(ConfigUpdater.Status.UP_TO_DATE, new ConfigUpdater(instance.toFile(), cacheDir.toFile(), "v2", 2).status());
+    }
+
+    @Test
+    void recoversChangesCopiedByCrashedRun() throws IOException {
+        val instance = instance("one");
+        run(instance, "v1");
+        // a run that copied the player's configs into the worktree, then died before committing them
+        val worktree = instance.resolve(".updater_pack_configs");
+        for (val dir : List.of(instance, worktree)) {
+            write(dir.resolve("config/a.cfg"), "a1 changed by the player\n");
+            write(dir.resolve("config/crashed.cfg"), "crashed\n");
+            Files.delete(dir.resolve("config/b.cfg"));
+        }
+        Files.setLastModifiedTime(worktree.resolve("config/a.cfg"), Files.getLastModifiedTime(instance.resolve("config/a.cfg")));
+        Files.setLastModifiedTime(worktree.resolve("config/crashed.cfg"), Files.getLastModifiedTime(instance.resolve("config/crashed.cfg")));
+
+        run(instance, "v2");
+
+        // upstream wins where both changed a.cfg, the rest of the player's changes stay
+        assertEquals("a2\n", Files.readString(instance.resolve("config/a.cfg")));
+        assertEquals("crashed\n", Files.readString(instance.resolve("config/crashed.cfg")));
+        assertFalse(Files.exists(instance.resolve("config/b.cfg")));
+        assertEquals(ConfigUpdater.Status.UP_TO_DATE, new ConfigUpdater(instance.toFile(), cacheDir.toFile(), "v2", 2).status());
+    }
+
+    @Test
+    void mergesTagOffAnotherBranchAfterShallowFetch() throws IOException, GitAPIException {
+        // a hotfix tag on a branch forked at v1, so the shallow fetch of v2 has no base in common with it
+        try (val git = Git.open(upstream.toFile())) {
+            git.checkout().setCreateBranch(true).setName("hotfix").setStartPoint("v1").call();
+            write(upstream.resolve("config/b.cfg"), "b1 hotfix\n");
+            commit(git, "v1.1");
+            git.checkout().setName("master").call();
+            write(upstream.resolve("other/x.txt"), "x3\n");
+            commit(git, "v3");
+        }
+        val instance = instance("one");
+        run(instance, "v2");
+        assertTrue(Files.exists(cacheDir.resolve("configs.git/shallow")));
+
+        run(instance, "v1.1");
+
+        assertEquals("a2\n", Files.readString(instance.resolve("config/a.cfg")));
+        assertEquals("b1 hotfix\n", Files.readString(instance.resolve("config/b.cfg")));
+        assertFalse(Files.exists(cacheDir.resolve("configs.git/shallow")));
+        assertEquals(List.of(".git", "config"), list(instance.resolve(".updater_pack_configs")));
+    }
+
+    @Test
+    void mergeDeletesConfigsRemovedUpstream() throws IOException, GitAPIException {
+        try (val git = Git.open(upstream.toFile())) {
+            Files.delete(upstream.resolve("config/b.cfg"));
+            git.rm().addFilepattern("config/b.cfg").call();
+            commit(git, "v3");
+        }
+        val instance = instance("one");
+        run(instance, "v1");
+
+        run(instance, "v3");
+
+        assertEquals(List.of("a.cfg"), list(instance.resolve("config")));
+        assertEquals(List.of("a.cfg"), list(instance.resolve(".updater_pack_configs/config")));
+    }
+
+    @Test
+    void instancesShareOneRepo() throws IOException {
+        val one = instance("one");
+        val two = instance("two");
+
+        run(one, "v1");
+        run(two, "v2");
+
+        assertEquals(List.of("a.cfg", "b.cfg"), list(two.resolve("config")));
+        assertEquals("a2\n", Files.readString(two.resolve("config/a.cfg")));
+        assertEquals(2, list(cacheDir.resolve("configs.git/worktrees")).size());
+        assertEquals(ConfigUpdater.Status.UPDATE, new ConfigUpdater(one.toFile(), cacheDir.toFile(), "v2", 2).status());
+    }
+
+    private void run(Path instance, String tag) throws IOException {
+        // the first run asks before replacing the configs
+        System.setIn(new ByteArrayInputStream("y\n".getBytes(StandardCharsets.UTF_8)));
+        new ConfigUpdater(instance.toFile(), cacheDir.toFile(), tag, 2).run();
+    }
+
+    private Path instance(String name) throws IOException {
+        val instance = root.resolve(name);
+        write(instance.resolve("config/a.cfg"), "local\n");
+        return instance;
+    }
+
+    private static void commit(Git git, String tag) throws GitAPIException {
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage(tag).setAuthor("Test", "test@example.com").setCommitter("Test", "test@example.com").call();
+        git.tag().setName(tag).call();
+    }
+
+    private static List<String> list(Path directory) throws IOException {
+        try (val paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content);
+    }
+}
@@ -0,0 +1,182 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentStoreTest {
+    @TempDir
+    Path root;
+
+    private ContentStore store;
+    private Path storeDir;
+    private Path entriesDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storeDir = root.resolve("store");
+        entriesDir = Files.createDirectories(root.resolve("mods"));
+        store = new ContentStore(storeDir);
+    }
+
+    @Test
+    void verifyAdoptsUnrecordedEntry() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+        val sha256 = ContentStore.hash(entry);
+
+        assertTrue(store.verify(entry, sha256));
+
+        val object = storeDir.resolve(sha256.substring(0, 2)).resolve(sha256);
+        assertTrue(Files.isSameFile(object, entry));
+        assertTrue(Files.readString(record(entry)).startsWith(sha256 + " " + Files.size(entry) + " "));
+    }
+
+    @Test
+    void adoptLinksEqualContentToOneObject() throws IOException {
+        val first = jar("A/A-1.0.jar", "same");
+        val second = jar("B/B-1.0.jar", "same");
+        Files.setLastModifiedTime(second, Files.getLastModifiedTime(first));
+
+        assertTrue(store.adopt(first, null));
+        assertTrue(store.adopt(second, null));
+
+        assertTrue(Files.isSameFile(first, second));
+    }
+
+    @Test
+    void adoptRejectsChecksumMismatch() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+
+        assertFalse(store.adopt(entry, "00".repeat(32)));
+
+        assertFalse(Files.exists(entry));
+        assertFalse(Files.exists(storeDir.resolve("00")));
+    }
+
+    @Test
+    void adoptRejectsUnreadableArchive() throws IOException {
+        val entry = entriesDir.resolve("Mod-1.0.jar");
+        Files.writeString(entry, "not a zip");
+
+        assertFalse(store.adopt(entry, null));
+
+        assertFalse(Files.exists(entry));
+    }
+
+    @Test
+    void adoptReplacesTruncatedObject() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+        val sha256 = ContentStore.hash(entry);
+        val object = Files.createDirectories(storeDir.resolve(sha256.substring(0, 2))).resolve(sha256);
+        Files.write(object, new byte[3]);
+
+        assertTrue(store.adopt(entry, sha256));
+
+        assertEquals(sha256, ContentStore.hash(object));
+    }
+
+    @Test
+    void verifyTrustsUnchangedEntry() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+        store.adopt(entry, null);
+
+        assertTrue(store.verify(entry, null));
+        assertTrue(Files.exists(entry));
+    }
+
+    @Test
+    void verifyDetectsTruncatedEntry() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+        store.adopt(entry, null);
+        Files.write(entry, new byte[10]);
+
+        assertFalse(store.verify(entry, null));
+
+        assertFalse(Files.exists(entry));
+        assertFalse(Files.exists(record(entry)));
+    }
+
+    @Test
+    void verifyDetectsCorruptEntryOfTheSameSize() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+        store.adopt(entry, null);
+        val modified = Files.getLastModifiedTime(entry);
+        Files.write(entry, new byte[(int) Files.size(entry)]);
+        // a rewrite within the same millisecond would otherwise look untouched
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(modified.toMillis() - 60_000));
+
+        assertFalse(store.verify(entry, null));
+
+        assertFalse(Files.exists(entry));
+    }
+
+    @Test
+    void verifyRehashesTouchedEntry() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+        store.adopt(entry, null);
+        val touched = FileTime.fromMillis(Files.getLastModifiedTime(entry).toMillis() - 60_000);
+        Files.setLastModifiedTime(entry, touched);
+
+        assertTrue(store.verify(entry, null));
+
+        assertTrue(Files.readString(record(entry)).trim().endsWith(" " + touched.toMillis()));
+    }
+
+    @Test
+    void verifyRejectsRecordForAnotherChecksum() throws IOException {
+        val entry = jar("Mod/Mod-1.0.jar", "mod");
+        store.adopt(entry, null);
+
+        assertFalse(store.verify(entry, "00".repeat(32)));
+
+        assertFalse(Files.exists(entry));
+    }
+
+    @Test
+    void removeUnreferencedKeepsLinkedEntries() throws IOException {
+        val kept = jar("Kept/Kept-1.0.jar", "kept");
+        val removed = jar("Removed/Removed-1.0.jar", "removed");
+        store.adopt(kept, null);
+        store.adopt(removed, null);
+        val keptSha256 = ContentStore.hash(kept);
+        val removedSha256 = ContentStore.hash(removed);
+        Files.delete(removed);
+        Files.delete(record(removed));
+
+        store.removeUnreferenced(entriesDir);
+
+        assertTrue(Files.exists(storeDir.resolve(keptSha256.substring(0, 2)).resolve(keptSha256)));
+        assertFalse(Files.exists(storeDir.resolve(removedSha256.substring(0, 2)).resolve(removedSha256)));
+        assertTrue(store.verify(kept, keptSha256));
+    }
+
+    private Path jar(String name, String content) throws IOException {
+        val path = entriesDir.resolve(name);
+        Files.createDirectories(path.getParent());
+        try (val out = new ZipOutputStream(Files.newOutputStream(path))) {
+            val entry = new ZipEntry("content.txt");
+            entry.setTime(0);
+            out.putNextEntry(entry);
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return path;
+    }
+
+    private static Path record(Path entry) {
+        return entry.resolveSibling(entry.getFileName() + ContentStore.RECORD_EXTENSION);
+    }
+}
@@ -0,0 +1,105 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectorySyncTest {
+    @TempDir
+    Path root;
+
+    private final DirectorySync sync = new DirectorySync(4);
+
+    @Test
+    void copiesIntoMissingTarget() throws IOException, InterruptedException {
+        val source = root.resolve("source");
+        write(source.resolve("a.cfg"), "a");
+        write(source.resolve("sub/b.cfg"), "b");
+
+        val result = sync.sync(source, root.resolve("target"));
+
+        assertEquals(List.of(Path.of("a.cfg"), Path.of("sub", "b.cfg")), result.copied().stream().sorted().toList());
+        assertEquals("b", Files.readString(root.resolve("target/sub/b.cfg")));
+        assertEquals(Files.getLastModifiedTime(source.resolve("a.cfg")), Files.getLastModifiedTime(root.resolve("target/a.cfg")));
+    }
+
+    @Test
+    void onlyTouchesWhatDiffers() throws IOException, InterruptedException {
+        val source = root.resolve("source");
+        val target = root.resolve("target");
+        write(source.resolve("same.cfg"), "same");
+        write(source.resolve("changed.cfg"), "old");
+        write(source.resolve("gone/removed.cfg"), "removed");
+        sync.sync(source, target);
+
+        write(source.resolve("changed.cfg"), "new content");
+        Files.delete(source.resolve("gone/removed.cfg"));
+        Files.delete(source.resolve("gone"));
+        val result = sync.sync(source, target);
+
+        assertEquals(List.of(Path.of("changed.cfg")), result.copied());
+        assertEquals(List.of(Path.of("gone", "removed.cfg")), result.deleted());
+        assertEquals(1, result.unchanged());
+        assertEquals("new content", Files.readString(target.resolve("changed.cfg")));
+        assertFalse(Files.exists(target.resolve("gone")));
+    }
+
+    @Test
+    void identicalContentWithOtherTimeIsNotCopied() throws IOException, InterruptedException {
+        val source = root.resolve("source");
+        val target = root.resolve("target");
+        write(source.resolve("a.cfg"), "a");
+        write(target.resolve("a.cfg"), "a");
+        Files.setLastModifiedTime(target.resolve("a.cfg"), FileTime.fromMillis(0));
+
+        val result = sync.sync(source, target);
+
+        assertTrue(result.copied().isEmpty());
+        assertEquals(1, result.unchanged());
+        // so the next sync skips it without reading it
+        assertEquals(Files.getLastModifiedTime(source.resolve("a.cfg")), Files.getLastModifiedTime(target.resolve("a.cfg")));
+    }
+
+    @Test
+    void replacesDirectoryWhereFileGoes() throws IOException, InterruptedException {
+        val source = root.resolve("source");
+        val target = root.resolve("target");
+        write(source.resolve("a.cfg"), "file");
+        write(target.resolve("a.cfg/inner.cfg"), "inner");
+
+        val result = sync.sync(source, target);
+
+        assertEquals(List.of(Path.of("a.cfg")), result.copied());
+        assertEquals(List.of(Path.of("a.cfg", "inner.cfg")), result.deleted());
+        assertEquals("file", Files.readString(target.resolve("a.cfg")));
+    }
+
+    @Test
+    void leavesNothingTheSourceDoesNotHave() throws IOException, InterruptedException {
+        val source = Files.createDirectories(root.resolve("source"));
+        val target = root.resolve("target");
+        write(target.resolve("deep/er/stale.cfg"), "stale");
+
+        val result = sync.sync(source, target);
+
+        assertEquals(List.of(Path.of("deep", "er", "stale.cfg")), result.deleted());
+        try (val remaining = Files.list(target)) {
+            assertEquals(0, remaining.count());
+        }
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content);
+    }
+}
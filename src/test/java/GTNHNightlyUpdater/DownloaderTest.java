@@ -0,0 +1,198 @@
+package GTNHNightlyUpdater;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownloaderTest {
+    private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+
+    @TempDir
+    Path root;
+
+    private HttpServer server;
+    private Downloader downloader;
+    // Range header of every request, "" for none
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private boolean honourRanges = true;
+    // Retry-After of the 503 the first request for /busy.jar gets
+    private volatile String retryAfter;
+    private final AtomicInteger busyRequests = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/mod.jar", this::serve);
+        server.createContext("/busy.jar", exchange -> {
+            if (busyRequests.getAndIncrement() > 0) {
+                serve(exchange);
+                return;
+            }
+            try (exchange) {
+                exchange.getResponseHeaders().add("Retry-After", retryAfter);
+                exchange.sendResponseHeaders(503, -1);
+            }
+        });
+        server.start();
+        downloader = new Downloader(Transport.http(Map.of()), 2, Map.of(), 1, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        downloader.close();
+        server.stop(0);
+    }
+
+    @Test
+    void downloadsIntoPlace() throws IOException, InterruptedException {
+        val target = root.resolve("mod.jar");
+
+        assertTrue(downloader.download(url(), target));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertFalse(Files.exists(Downloader.partPath(target)));
+        assertEquals(List.of(""), ranges);
+    }
+
+    @Test
+    void resumesPartialFileOn206() throws IOException, InterruptedException {
+        val target = root.resolve("mod.jar");
+        Files.write(Downloader.partPath(target), Arrays.copyOf(CONTENT, 10));
+
+        assertTrue(downloader.download(url(), target));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(List.of("bytes=10-"), ranges);
+    }
+
+    @Test
+    void startsOverOn200() throws IOException, InterruptedException {
+        honourRanges = false;
+        val target = root.resolve("mod.jar");
+        Files.writeString(Downloader.partPath(target), "not the start of the file");
+
+        assertTrue(downloader.download(url(), target));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    }
+
+    @Test
+    void completesPartialFileOn416() throws IOException, InterruptedException {
+        val target = root.resolve("mod.jar");
+        Files.write(Downloader.partPath(target), CONTENT);
+
+        assertTrue(downloader.download(url(), target));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(List.of("bytes=" + CONTENT.length + "-"), ranges);
+    }
+
+    @Test
+    void startsOverOn416ForLongerPartialFile() throws IOException, InterruptedException {
+        val target = root.resolve("mod.jar");
+        Files.writeString(Downloader.partPath(target), new String(CONTENT, StandardCharsets.UTF_8) + "garbage");
+
+        assertTrue(downloader.download(url(), target));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(List.of("bytes=" + (CONTENT.length + 7) + "-", ""), ranges);
+    }
+
+    @Test
+    void missingFileIsNotRetried() throws IOException, InterruptedException {
+        val target = root.resolve("missing.jar");
+
+        assertFalse(downloader.download("http://127.0.0.1:" + server.getAddress().getPort() + "/missing.jar", target));
+
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void retriesAfterHttpDate() throws IOException, InterruptedException {
+        retryAfter = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(1));
+        val target = root.resolve("mod.jar");
+
+        assertTrue(downloader.download("http://127.0.0.1:" + server.getAddress().getPort() + "/busy.jar", target));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(2, busyRequests.get());
+    }
+
+    @Test
+    void retriesAfterUnreadableRetryAfter() throws IOException, InterruptedException {
+        retryAfter = "soon";
+        val target = root.resolve("mod.jar");
+
+        assertTrue(downloader.download("http://127.0.0.1:" + server.getAddress().getPort() + "/busy.jar", target));
+
+        assertEquals(2, busyRequests.get());
+    }
+
+    @Test
+    void readsRetryAfterInSecondsOrAsHttpDate() {
+        assertEquals(3000, Downloader.retryAfterMillis(headers("3")));
+        val inTenSeconds = Downloader.retryAfterMillis(headers(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10))));
+        assertTrue(inTenSeconds > 8000 && inTenSeconds <= 10_000, String.valueOf(inTenSeconds));
+        assertEquals(0, Downloader.retryAfterMillis(headers("Wed, 21 Oct 2015 07:28:00 GMT")));
+        assertEquals(-1, Downloader.retryAfterMillis(headers("soon")));
+        assertEquals(-1, Downloader.retryAfterMillis(headers("-5")));
+        assertEquals(-1, Downloader.retryAfterMillis(HttpHeaders.of(Map.of(), (name, value) -> true)));
+    }
+
+    private static HttpHeaders headers(String retryAfter) {
+        return HttpHeaders.of(Map.of("Retry-After", List.of(retryAfter)), (name, value) -> true);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/mod.jar";
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            val range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(range != null ? range : "");
+            val matcher = RANGE.matcher(range != null ? range : "");
+            if (!honourRanges || !matcher.matches()) {
+                exchange.sendResponseHeaders(200, CONTENT.length);
+                exchange.getResponseBody().write(CONTENT);
+                return;
+            }
+            val start = Integer.parseInt(matcher.group(1));
+            if (start >= CONTENT.length) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + CONTENT.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range", String.format("bytes %d-%d/%d", start, CONTENT.length - 1, CONTENT.length));
+            exchange.sendResponseHeaders(206, CONTENT.length - start);
+            exchange.getResponseBody().write(CONTENT, start, CONTENT.length - start);
+        }
+    }
+}
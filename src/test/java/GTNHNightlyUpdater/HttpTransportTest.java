@@ -0,0 +1,92 @@
+package GTNHNightlyUpdater;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpTransportTest {
+    private HttpServer github;
+    private HttpServer objects;
+    private Transport transport;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        github = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // like a GitHub release download, which redirects to another host
+        github.createContext("/releases/mod.jar", exchange -> redirect(exchange, "https://objects.githubusercontent.com/mod.jar?token=1"));
+        github.createContext("/moved/mod.jar", exchange -> redirect(exchange, "/releases/mod.jar"));
+        github.createContext("/loop", exchange -> redirect(exchange, "/loop"));
+        github.start();
+
+        objects = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        objects.createContext("/mod.jar", exchange -> {
+            try (exchange) {
+                val body = ("content for " + exchange.getRequestURI().getQuery()).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        objects.start();
+
+        transport = Transport.http(Map.of(
+                "github.com", "http://127.0.0.1:" + github.getAddress().getPort() + "/",
+                "objects.githubusercontent.com", "http://127.0.0.1:" + objects.getAddress().getPort()
+        ));
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.close();
+        github.stop(0);
+        objects.stop(0);
+    }
+
+    @Test
+    void rewritesEveryRedirectHop() throws IOException, InterruptedException {
+        val response = get("https://github.com/releases/mod.jar");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("content for token=1", response.body());
+    }
+
+    @Test
+    void resolvesRelativeRedirectsAgainstTheRequestedHost() throws IOException, InterruptedException {
+        val response = get("https://github.com/moved/mod.jar");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("content for token=1", response.body());
+    }
+
+    @Test
+    void givesUpOnRedirectLoops() {
+        assertThrows(IOException.class, () -> get("https://github.com/loop"));
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        return transport.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void redirect(HttpExchange exchange, String location) throws IOException {
+        try (exchange) {
+            val body = "moved".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Location", location);
+            exchange.sendResponseHeaders(302, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class InstallStrategyTest {
+    @TempDir
+    Path root;
+
+    private Path source;
+    private Path target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        source = root.resolve("cache/mod.jar");
+        Files.createDirectories(source.getParent());
+        Files.writeString(source, "cached");
+        target = root.resolve("mods/mod.jar");
+        Files.createDirectories(target.getParent());
+        Files.writeString(target, "old");
+    }
+
+    @Test
+    void copyIsIndependentOfTheCache() throws IOException {
+        InstallStrategy.COPY.install(source, target);
+        Files.writeString(target, "changed");
+
+        assertEquals("cached", Files.readString(source));
+    }
+
+    @Test
+    void symlinkPointsAtTheCache() throws IOException {
+        InstallStrategy.SYMLINK.install(source, target);
+
+        assertTrue(Files.isSymbolicLink(target));
+        assertEquals(source, Files.readSymbolicLink(target));
+    }
+
+    @Test
+    void hardlinkSharesTheCachedFile() throws IOException {
+        InstallStrategy.HARDLINK.install(source, target);
+
+        assertTrue(Files.isSameFile(source, target));
+    }
+
+    @Test
+    void reflinkInstallsAnIndependentFileEitherWay() throws IOException {
+        // a clone where the filesystem can, otherwise a copy
+        InstallStrategy.REFLINK.install(source, target);
+        Files.writeString(target, "changed");
+
+        assertEquals("cached", Files.readString(source));
+        assertFalse(Files.isSymbolicLink(target));
+    }
+
+    @Test
+    void reflinkProbeLeavesNothingBehind() throws IOException {
+        InstallStrategy.supportsReflink(target.getParent());
+
+        try (val files = Files.list(target.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void reflinkClonesWhereSupported() throws IOException {
+        assumeTrue(InstallStrategy.supportsReflink(target.getParent()), "the filesystem can't clone files");
+
+        InstallStrategy.REFLINK.install(source, target);
+
+        assertEquals("cached", Files.readString(target));
+        assertFalse(Files.isSameFile(source, target));
+    }
+}
@@ -0,0 +1,119 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstanceStateTest {
+    private static final Main.Options.Instance.InstanceConfig.Side CLIENT = Main.Options.Instance.InstanceConfig.Side.CLIENT;
+
+    @TempDir
+    Path minecraftDir;
+
+    @Test
+    void roundTrips() throws IOException {
+        val state = new InstanceState(500, "hash", Map.of("A-1.0.jar", 10L, "B-2.0.jar", 20L));
+
+        state.write(minecraftDir);
+
+        assertEquals(state, InstanceState.read(minecraftDir));
+    }
+
+    @Test
+    void missingOrBrokenStateIsIgnored() throws IOException {
+        assertNull(InstanceState.read(minecraftDir));
+
+        Files.writeString(minecraftDir.resolve(InstanceState.FILE_NAME), "{not json");
+        assertNull(InstanceState.read(minecraftDir));
+
+        Files.writeString(minecraftDir.resolve(InstanceState.FILE_NAME), "{\"nightly\":500}");
+        assertNull(InstanceState.read(minecraftDir));
+    }
+
+    @Test
+    void deleteRemovesState() throws IOException {
+        new InstanceState(500, "hash", Map.of()).write(minecraftDir);
+
+        InstanceState.delete(minecraftDir);
+
+        assertNull(InstanceState.read(minecraftDir));
+    }
+
+    @Test
+    void isCurrentComparesEverything() {
+        val state = new InstanceState(500, "hash", Map.of("A-1.0.jar", 10L));
+
+        assertTrue(state.isCurrent(500, "hash", Map.of("A-1.0.jar", 10L)));
+        assertFalse(state.isCurrent(501, "hash", Map.of("A-1.0.jar", 10L)));
+        assertFalse(state.isCurrent(500, "other", Map.of("A-1.0.jar", 10L)));
+        assertFalse(state.isCurrent(500, "hash", Map.of("A-1.0.jar", 11L)));
+        assertFalse(state.isCurrent(500, "hash", Map.of("A-1.0.jar", 10L, "B-2.0.jar", 20L)));
+        assertFalse(state.isCurrent(500, "hash", Map.of()));
+    }
+
+    @Test
+    void installedJarsListsNamesAndSizes() throws IOException {
+        val modsDir = minecraftDir.resolve("mods");
+        Files.createDirectories(modsDir.resolve("sub.jar"));
+        Files.writeString(modsDir.resolve("A-1.0.jar"), "a");
+        Files.writeString(modsDir.resolve("B-2.0.jar"), "bb");
+        Files.writeString(modsDir.resolve("notes.txt"), "not a jar");
+
+        assertEquals(Map.of("A-1.0.jar", 1L, "B-2.0.jar", 2L), InstanceState.installedJars(modsDir));
+
+        // replaced in place, the directory's modification time doesn't change but the size does
+        val state = new InstanceState(500, "hash", InstanceState.installedJars(modsDir));
+        Files.writeString(modsDir.resolve("A-1.0.jar"), "a, but truncated by a crash");
+        assertFalse(state.isCurrent(500, "hash", InstanceState.installedJars(modsDir)));
+    }
+
+    @Test
+    void desiredHashIgnoresModOrder() {
+        val first = InstanceState.desiredHash(assets(mod("A", "1.0"), mod("B", "2.0")), Set.of(), CLIENT, InstallStrategy.COPY);
+        val second = InstanceState.desiredHash(assets(mod("B", "2.0"), mod("A", "1.0")), Set.of(), CLIENT, InstallStrategy.COPY);
+
+        assertEquals(first, second);
+    }
+
+    @Test
+    void desiredHashNoticesChanges() {
+        val base = InstanceState.desiredHash(assets(mod("A", "1.0")), Set.of(), CLIENT, InstallStrategy.COPY);
+
+        assertNotEquals(base, InstanceState.desiredHash(assets(mod("A", "1.1")), Set.of(), CLIENT, InstallStrategy.COPY));
+        assertNotEquals(base, InstanceState.desiredHash(assets(mod("A", "1.0")), Set.of("A"), CLIENT, InstallStrategy.COPY));
+        assertNotEquals(base, InstanceState.desiredHash(assets(mod("A", "1.0")), Set.of(), Main.Options.Instance.InstanceConfig.Side.SERVER, InstallStrategy.COPY));
+        assertNotEquals(base, InstanceState.desiredHash(assets(mod("A", "1.0")), Set.of(), CLIENT, InstallStrategy.SYMLINK));
+
+        val otherSide = mod("A", "1.0");
+        otherSide.setSide("SERVER");
+        assertNotEquals(base, InstanceState.desiredHash(assets(otherSide), Set.of(), CLIENT, InstallStrategy.COPY));
+    }
+
+    private static Assets.Asset assets(Assets.Mod... mods) {
+        return new Assets.Asset(new ArrayList<>(List.of(mods)), 500, 500);
+    }
+
+    private static Assets.Mod mod(String name, String version) {
+        val modVersion = new Assets.Version(version);
+        modVersion.setFileName(name + "-" + version + ".jar");
+        val mod = new Assets.Mod(name, null, new ArrayList<>(List.of(modVersion)));
+        mod.setSide("BOTH");
+        mod.setLatestVersion(version);
+        return mod;
+    }
+}
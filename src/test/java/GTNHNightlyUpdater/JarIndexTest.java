@@ -0,0 +1,124 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Utils.Tasks;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JarIndexTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void readsModIdsAndVersion() throws IOException, InterruptedException {
+        val list = jar("list.jar", "[{\"modid\": \"foo\", \"version\": \"1.2\"}, {\"modid\": \"foocore\"}]");
+        val object = jar("object.jar", "{\"modListVersion\": 2, \"modList\": [{\"modid\": \"bar\", \"version\": \"2.0\"}]}");
+        val none = jar("none.jar", null);
+
+        val jars = new JarIndex(root, 2).identify(List.of(list, object, none));
+
+        assertEquals(new JarIndex.Jar(ContentStore.hash(list), List.of("foo", "foocore"), "1.2"), jars.get(list));
+        assertEquals(List.of("bar"), jars.get(object).modIds());
+        assertEquals(List.of(), jars.get(none).modIds());
+        assertTrue(Files.exists(root.resolve(JarIndex.FILE_NAME)));
+    }
+
+    @Test
+    void rereadsOnlyChangedJars() throws IOException, InterruptedException {
+        val jar = jar("foo.jar", "[{\"modid\": \"foo\", \"version\": \"1.0\"}]");
+        new JarIndex(root, 2).identify(List.of(jar));
+
+        // an unchanged size and time is trusted without reading the jar
+        val modified = Files.getLastModifiedTime(jar);
+        jar("foo.jar", "[{\"modid\": \"oof\", \"version\": \"1.0\"}]");
+        Files.setLastModifiedTime(jar, modified);
+        assertEquals(List.of("foo"), new JarIndex(root, 2).identify(List.of(jar)).get(jar).modIds());
+
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(modified.toMillis() + 1000));
+        assertEquals(List.of("oof"), new JarIndex(root, 2).identify(List.of(jar)).get(jar).modIds());
+    }
+
+    @Test
+    void dryRunLeavesIndexAlone() throws IOException, InterruptedException {
+        val jar = jar("foo.jar", "[{\"modid\": \"foo\"}]");
+
+        val jars = new JarIndex(root, 2).identify(List.of(jar), false);
+
+        assertEquals(List.of("foo"), jars.get(jar).modIds());
+        assertFalse(Files.exists(root.resolve(JarIndex.FILE_NAME)));
+    }
+
+    @Test
+    void instancesIndexedAtOnceAreAllSaved() throws IOException, InterruptedException {
+        val index = new JarIndex(root, 2);
+        val tasks = new ArrayList<Callable<Void>>();
+        for (val instance : List.of("a", "b")) {
+            val jars = new ArrayList<Path>();
+            for (int i = 0; i < 20; i++) {
+                jars.add(jar(instance + "/mods/Mod" + i + ".jar", "[{\"modid\": \"" + instance + i + "\"}]"));
+            }
+            tasks.add(() -> {
+                index.identify(jars);
+                return null;
+            });
+        }
+
+        Tasks.runAll(tasks);
+
+        val saved = Files.readString(root.resolve(JarIndex.FILE_NAME));
+        for (int i = 0; i < 20; i++) {
+            assertTrue(saved.contains("\"a" + i + "\""));
+            assertTrue(saved.contains("\"b" + i + "\""));
+        }
+    }
+
+    @Test
+    void saveKeepsJarsOfModsDirectoryBeingSwapped() throws IOException, InterruptedException {
+        val index = new JarIndex(root, 2);
+        val swapped = jar("a/mods/Foo.jar", "[{\"modid\": \"foo\"}]");
+        index.identify(List.of(swapped));
+
+        // another instance saves while this one's mods directory is renamed aside
+        Files.move(root.resolve("a/mods"), root.resolve("a/mods.previous"));
+        index.identify(List.of(jar("b/mods/Bar.jar", "[{\"modid\": \"bar\"}]")));
+        Files.move(root.resolve("a/mods.previous"), root.resolve("a/mods"));
+
+        assertTrue(Files.readString(root.resolve(JarIndex.FILE_NAME)).contains("\"foo\""));
+
+        // gone for good, it is dropped the next time the index is loaded
+        Files.delete(swapped);
+        new JarIndex(root, 2).identify(List.of(jar("b/mods/Baz.jar", "[{\"modid\": \"baz\"}]")));
+        assertFalse(Files.readString(root.resolve(JarIndex.FILE_NAME)).contains("\"foo\""));
+    }
+
+    private Path jar(String name, String mcmodInfo) throws IOException {
+        val path = root.resolve(name);
+        Files.createDirectories(path.getParent());
+        try (val zip = new ZipOutputStream(Files.newOutputStream(path))) {
+            if (mcmodInfo != null) {
+                zip.putNextEntry(new ZipEntry("mcmod.info"));
+                zip.write(mcmodInfo.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.putNextEntry(new ZipEntry("Mod.class"));
+            zip.write(name.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return path;
+    }
+}
@@ -0,0 +1,170 @@
+package GTNHNightlyUpdater;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MetadataCacheTest {
+    private static final String LAST_MODIFIED = "Wed, 01 Jan 2025 00:00:00 GMT";
+
+    @TempDir
+    Path cacheDir;
+
+    private HttpServer server;
+    // "<If-None-Match> <If-Modified-Since>" of every request, "-" for a missing header
+    private final List<String> conditions = new CopyOnWriteArrayList<>();
+    private volatile String content = "{\"version\":1}";
+    private volatile String etag = "\"v1\"";
+    private volatile boolean gzip;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/manifest.json", this::serve);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void storesResponseWithItsValidators() throws IOException, InterruptedException {
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ZERO)) {
+            val response = cache.get(url("/manifest.json"));
+
+            assertEquals(200, response.statusCode());
+            assertEquals(content, Files.readString(response.body()));
+            assertEquals(List.of("- -"), conditions);
+        }
+    }
+
+    @Test
+    void zeroTtlRevalidatesAndServesNotModifiedFromDisk() throws IOException, InterruptedException {
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ZERO)) {
+            cache.get(url("/manifest.json"));
+            val response = cache.get(url("/manifest.json"));
+
+            assertEquals(200, response.statusCode());
+            assertEquals("{\"version\":1}", Files.readString(response.body()));
+            assertEquals(List.of("- -", "\"v1\" " + LAST_MODIFIED), conditions);
+        }
+    }
+
+    @Test
+    void replacesChangedResponse() throws IOException, InterruptedException {
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ZERO)) {
+            cache.get(url("/manifest.json"));
+            content = "{\"version\":2}";
+            etag = "\"v2\"";
+
+            val response = cache.get(url("/manifest.json"));
+
+            assertEquals("{\"version\":2}", Files.readString(response.body()));
+        }
+    }
+
+    @Test
+    void decodesGzipResponse() throws IOException, InterruptedException {
+        gzip = true;
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ZERO)) {
+            val response = cache.get(url("/manifest.json"));
+
+            assertEquals(content, Files.readString(response.body()));
+        }
+    }
+
+    @Test
+    void freshResponseIsServedWithoutRequest() throws IOException, InterruptedException {
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ofHours(1))) {
+            cache.get(url("/manifest.json"));
+            content = "{\"version\":2}";
+
+            val response = cache.get(url("/manifest.json"));
+
+            assertEquals("{\"version\":1}", Files.readString(response.body()));
+            assertEquals(1, conditions.size());
+        }
+    }
+
+    @Test
+    void negativeTtlNeverExpires() throws IOException, InterruptedException {
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ZERO)) {
+            cache.get(url("/manifest.json"));
+        }
+        content = "{\"version\":2}";
+
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ofSeconds(-1))) {
+            val response = cache.get(url("/manifest.json"));
+
+            assertEquals("{\"version\":1}", Files.readString(response.body()));
+            assertEquals(1, conditions.size());
+        }
+    }
+
+    @Test
+    void missingResponseHasNoBody() throws IOException, InterruptedException {
+        try (val cache = new MetadataCache(Transport.http(Map.of()), cacheDir, Duration.ZERO)) {
+            val response = cache.get(url("/missing.json"));
+
+            assertEquals(404, response.statusCode());
+            assertNull(response.body());
+        }
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            val headers = exchange.getRequestHeaders();
+            val ifNoneMatch = headers.getFirst("If-None-Match");
+            val ifModifiedSince = headers.getFirst("If-Modified-Since");
+            conditions.add((ifNoneMatch != null ? ifNoneMatch : "-") + " " + (ifModifiedSince != null ? ifModifiedSince : "-"));
+            if (!exchange.getRequestURI().getPath().equals("/manifest.json")) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (etag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            var body = content.getBytes(StandardCharsets.UTF_8);
+            if (gzip) {
+                val out = new ByteArrayOutputStream();
+                try (val gzipOut = new GZIPOutputStream(out)) {
+                    gzipOut.write(body);
+                }
+                body = out.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the counters are global to the run, so every test uses names no other test does
+class MetricsTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void countsPerHost() {
+        val host = "counts.metrics.invalid";
+        Metrics.request(host);
+        Metrics.request(host);
+        Metrics.received(host, 100);
+        Metrics.retry(host);
+        Metrics.failure(host);
+
+        assertEquals(new Metrics.Host(2, 100, 1, 1), Metrics.summary(true).hosts().get(host));
+    }
+
+    @Test
+    void countsPerInstance() {
+        val instance = root.resolve("counts-instance");
+        Metrics.installed(instance, InstallStrategy.HARDLINK, 3);
+        Metrics.installed(instance, InstallStrategy.COPY, 1);
+        Metrics.deleted(instance, 2);
+
+        assertEquals(new Metrics.Instance(Map.of("copy", 1L, "hardlink", 3L), 2), Metrics.summary(true).instances().get(instance.toString()));
+    }
+
+    @Test
+    void timesPhases() throws InterruptedException {
+        try (val ignored = Metrics.time("metrics-test-phase")) {
+            Thread.sleep(5);
+        }
+
+        assertTrue(Metrics.summary(true).phaseSeconds().get("metrics-test-phase") >= 0.005);
+    }
+
+    @Test
+    void countsCacheHits() {
+        val before = Metrics.summary(true).cache();
+        Metrics.cacheHit();
+        Metrics.cacheMiss();
+        Metrics.cacheMiss();
+
+        val after = Metrics.summary(true).cache();
+        assertEquals(before.hits() + 1, after.hits());
+        assertEquals(before.misses() + 2, after.misses());
+        assertEquals((double) after.hits() / (after.hits() + after.misses()), after.hitRatio(), 1e-9);
+    }
+
+    @Test
+    void writesJsonSummary() throws IOException {
+        Metrics.downloaded("MetricsTestMod", 2_000_000_000L, 4096);
+        val path = root.resolve("metrics.json");
+
+        Metrics.writeJson(Metrics.summary(false), path);
+
+        val summary = JsonParser.parse(Files.readString(path), Metrics.Summary.class);
+        assertFalse(summary.success());
+        assertEquals(new Metrics.Mod(2.0, 4096), summary.downloads().get("MetricsTestMod"));
+        assertFalse(Files.exists(root.resolve("metrics.json.tmp")));
+    }
+
+    @Test
+    void writesPrometheusTextfile() throws IOException {
+        val host = "prometheus.metrics.invalid";
+        Metrics.request(host);
+        Metrics.installed(root.resolve("quote\"instance"), InstallStrategy.COPY, 5);
+        val path = root.resolve("updater.prom");
+
+        Metrics.writePrometheus(Metrics.summary(true), path);
+
+        val lines = Files.readAllLines(path);
+        assertTrue(lines.contains("gtnh_updater_last_run_success 1"));
+        assertTrue(lines.contains("# TYPE gtnh_updater_http_requests gauge"));
+        assertTrue(lines.contains("gtnh_updater_http_requests{host=\"" + host + "\"} 1"));
+        val escaped = root.resolve("quote\"instance").toString().replace("\\", "\\\\").replace("\"", "\\\"");
+        assertTrue(lines.contains("gtnh_updater_files_installed{instance=\"" + escaped + "\",mode=\"copy\"} 5"));
+    }
+}
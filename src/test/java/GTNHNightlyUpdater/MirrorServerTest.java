@@ -0,0 +1,175 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import com.sun.net.httpserver.HttpServer;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MirrorServerTest {
+    private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path root;
+
+    private HttpServer upstream;
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+    private MirrorServer mirror;
+    private final HttpClient client = HttpClient.newHttpClient();
+    // what the mirror resolves for clients, null for upstream being unreachable
+    private Assets.Asset assets;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        upstream.createContext("/mod.jar", exchange -> {
+            try (exchange) {
+                upstreamRequests.incrementAndGet();
+                exchange.sendResponseHeaders(200, CONTENT.length);
+                exchange.getResponseBody().write(CONTENT);
+            }
+        });
+        upstream.start();
+
+        val updater = new Updater(new Main.Options(), root.resolve("cache")) {
+            @Override
+            Assets.Asset fetchDAXXLAssets(Main.Options.TargetManifest targetManifest, Duration ttl) throws IOException {
+                if (assets == null) {
+                    throw new IOException("upstream unreachable");
+                }
+                return assets;
+            }
+        };
+        mirror = new MirrorServer(updater, root.resolve("cache"), new Downloader(Transport.http(Map.of()), 2, Map.of(), 0, null), Set.of("127.0.0.1"), "127.0.0.1", 0, MirrorServer.DEFAULT_ASSETS_TTL);
+        mirror.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mirror.close();
+        upstream.stop(0);
+        client.close();
+    }
+
+    @Test
+    void downloadsFromUpstreamOnce() throws IOException, InterruptedException {
+        val first = fetch(upstreamUrl("/mod.jar"), null);
+        val second = fetch(upstreamUrl("/mod.jar"), null);
+
+        assertEquals(200, first.statusCode());
+        assertArrayEquals(CONTENT, first.body());
+        assertArrayEquals(CONTENT, second.body());
+        assertEquals(1, upstreamRequests.get());
+    }
+
+    @Test
+    void servesRanges() throws IOException, InterruptedException {
+        fetch(upstreamUrl("/mod.jar"), null);
+
+        val response = fetch(upstreamUrl("/mod.jar"), "bytes=10-");
+
+        assertEquals(206, response.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, 10, CONTENT.length), response.body());
+        assertEquals("bytes 10-35/36", response.headers().firstValue("Content-Range").orElse(""));
+    }
+
+    @Test
+    void refusesHostsNotAllowed() throws IOException, InterruptedException {
+        val response = fetch("http://example.invalid/mod.jar", null);
+
+        assertEquals(403, response.statusCode());
+    }
+
+    @Test
+    void passesMissingFilesOn() throws IOException, InterruptedException {
+        val response = fetch(upstreamUrl("/missing.jar"), null);
+
+        assertEquals(404, response.statusCode());
+    }
+
+    @Test
+    void allowsHostsOfResolvedMods() throws IOException, InterruptedException {
+        val url = "http://localhost:" + upstream.getAddress().getPort() + "/mod.jar";
+        assertEquals(403, fetch(url, null).statusCode());
+
+        val version = new Assets.Version("1.0.0");
+        version.setFileName("mod-1.0.0.jar");
+        version.setBrowserDownloadUrl(url);
+        val mod = new Assets.Mod("mod", null, new ArrayList<>(List.of(version)));
+        mod.setLatestVersion("1.0.0");
+        assets = new Assets.Asset(new ArrayList<>(List.of(mod)), 1, 1);
+        assertEquals(200, get("/assets/daily").statusCode());
+
+        val response = fetch(url, null);
+        assertEquals(200, response.statusCode());
+        assertArrayEquals(CONTENT, response.body());
+    }
+
+    @Test
+    void answersUpstreamFailuresWithBadGateway() throws IOException, InterruptedException {
+        assertEquals(502, get("/assets/daily").statusCode());
+
+        int closedPort;
+        try (val socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        val url = "http://127.0.0.1:" + closedPort + "/mod.jar";
+        val request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + mirror.port() + "/fetch?url=" + URLEncoder.encode(url, StandardCharsets.UTF_8)))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        assertEquals(502, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void clientDownloadsThroughMirror() throws IOException, InterruptedException {
+        val target = root.resolve("mod.jar");
+        try (val downloader = new Downloader(Transport.http(Map.of()), 2, Map.of(), 0, "http://127.0.0.1:" + mirror.port() + "/")) {
+            assertTrue(downloader.download(upstreamUrl("/mod.jar"), target));
+        }
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(1, upstreamRequests.get());
+    }
+
+    private String upstreamUrl(String path) {
+        return "http://127.0.0.1:" + upstream.getAddress().getPort() + path;
+    }
+
+    private HttpResponse<byte[]> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + mirror.port() + path)).build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpResponse<byte[]> fetch(String url, String range) throws IOException, InterruptedException {
+        val request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + mirror.port() + "/fetch?url=" + URLEncoder.encode(url, StandardCharsets.UTF_8)));
+        if (range != null) {
+            request.header("Range", range);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,157 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModReconcilerTest {
+    private static final Path CACHE = Path.of("cache");
+    private static final Path MODS = Path.of("mods");
+
+    private Assets.Asset assets;
+    private final Map<String, Path> installed = new TreeMap<>();
+    private final Map<Path, JarIndex.Jar> jars = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        assets = new Assets.Asset(new ArrayList<>(), 1, 1);
+        addMod("Foo", "1.2", new JarIndex.Jar("foo-1.2", List.of("foo"), "1.2"));
+    }
+
+    @Test
+    void keepsTheVersionBeingInstalled() {
+        install("Foo-1.2.jar", null);
+
+        val plan = plan();
+
+        assertTrue(plan.isEmpty());
+        assertEquals(List.of("Foo-1.2.jar"), plan.kept());
+    }
+
+    @Test
+    void replacesOtherBuildMatchingTheNamePattern() {
+        install("Foo-1.3-pre.jar", null);
+
+        val plan = plan();
+
+        assertEquals(List.of("Foo-1.3-pre.jar"), deleted(plan));
+        assertEquals(ModReconciler.Reason.OLD_VERSION, plan.deletes().get(0).reason());
+        assertEquals("Foo-1.3-pre.jar", plan.adds().get(0).replaces());
+    }
+
+    @Test
+    void keepsDifferentModMatchingTheNamePattern() {
+        install("Foo-1.2-addon.jar", new JarIndex.Jar("addon", List.of("fooaddon"), "1.0"));
+
+        assertEquals(List.of(), deleted(plan()));
+    }
+
+    @Test
+    void replacesNamePatternMatchWhenContentsAreUnknown() {
+        install("Foo-1.2-addon.jar", null);
+
+        assertEquals(List.of("Foo-1.2-addon.jar"), deleted(plan()));
+    }
+
+    @Test
+    void replacesRenamedCopyByHash() {
+        install("renamed.jar", new JarIndex.Jar("foo-1.2", List.of(), null));
+
+        val plan = plan();
+
+        assertEquals(List.of("renamed.jar"), deleted(plan));
+        assertEquals("renamed.jar", plan.adds().get(0).replaces());
+    }
+
+    @Test
+    void replacesSameModIdsWithOtherVersion() {
+        install("dropped-in.jar", new JarIndex.Jar("foo-1.0", List.of("foo"), "1.0"));
+
+        assertEquals(List.of("dropped-in.jar"), deleted(plan()));
+    }
+
+    @Test
+    void keepsSameModIdsWithSameVersion() {
+        // a different build of the very version being installed isn't an old version
+        install("local-build.jar", new JarIndex.Jar("foo-1.2-local", List.of("foo"), "1.2"));
+
+        assertEquals(List.of(), deleted(plan()));
+    }
+
+    @Test
+    void keepsJarSharingOnlySomeModIds() {
+        install("bundle.jar", new JarIndex.Jar("bundle", List.of("foo", "bar"), "1.0"));
+
+        assertEquals(List.of(), deleted(plan()));
+    }
+
+    @Test
+    void keepsJarWhoseModIdsSeveralModsShip() {
+        addMod("CoreA", "1.0", new JarIndex.Jar("core-a", List.of("core"), "1.0"));
+        addMod("CoreB", "2.0", new JarIndex.Jar("core-b", List.of("core"), "2.0"));
+        install("core-0.9.jar", new JarIndex.Jar("core-0.9", List.of("core"), "0.9"));
+
+        assertEquals(List.of(), deleted(plan()));
+    }
+
+    @Test
+    void keepsUnknownJars() {
+        install("Unrelated-1.0.jar", new JarIndex.Jar("unrelated", List.of("unrelated"), "1.0"));
+
+        assertEquals(List.of(), deleted(plan()));
+    }
+
+    @Test
+    void removesExcludedMod() {
+        addMod("Excluded", "2.0", null);
+        assets.getMod("Excluded").getRetiredFileNames().add("Excluded-1.0.jar");
+        install("Excluded-1.0.jar", null);
+
+        val plan = ModReconciler.plan(assets, Set.of("Excluded"), Main.Options.Instance.InstanceConfig.Side.CLIENT, MODS, installed, version -> true, jars);
+
+        assertEquals(List.of("Excluded-1.0.jar"), deleted(plan));
+        assertEquals(ModReconciler.Reason.EXCLUDED, plan.deletes().get(0).reason());
+    }
+
+    private void addMod(String name, String versionTag, JarIndex.Jar jar) {
+        val version = new Assets.Version(versionTag);
+        version.setFileName(name + "-" + versionTag + ".jar");
+        version.setCachePath(CACHE.resolve(name).resolve(version.getFileName()));
+        val mod = new Assets.Mod(name, "github", new ArrayList<>());
+        mod.setSide("BOTH");
+        mod.addVersion(version);
+        mod.setLatestVersion(versionTag);
+        assets.addMod(mod);
+        if (jar != null) {
+            jars.put(version.getCachePath(), jar);
+        }
+    }
+
+    private void install(String fileName, JarIndex.Jar jar) {
+        val path = MODS.resolve(fileName);
+        installed.put(fileName, path);
+        if (jar != null) {
+            jars.put(path, jar);
+        }
+    }
+
+    private ModReconciler.Plan plan() {
+        return ModReconciler.plan(assets, Set.of(), Main.Options.Instance.InstanceConfig.Side.CLIENT, MODS, installed, version -> true, jars);
+    }
+
+    private static List<String> deleted(ModReconciler.Plan plan) {
+        return plan.deletes().stream().map(delete -> delete.path().getFileName().toString()).toList();
+    }
+}
@@ -0,0 +1,127 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModsTransactionTest {
+    @TempDir
+    Path root;
+
+    private Path modsDir;
+    private Path cached;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        modsDir = Files.createDirectories(root.resolve("mods"));
+        Files.writeString(modsDir.resolve("Old-1.0.jar"), "old");
+        Files.writeString(modsDir.resolve("Kept-1.0.jar"), "kept");
+        Files.createDirectories(modsDir.resolve("1.7.10"));
+        Files.writeString(modsDir.resolve("1.7.10/Nested.jar"), "nested");
+        cached = Files.writeString(root.resolve("New-2.0.jar"), "new");
+    }
+
+    @Test
+    void commitSwapsInStagedDirectory() throws IOException {
+        val transaction = ModsTransaction.begin(modsDir, Set.of(modsDir.resolve("Old-1.0.jar")));
+        transaction.add(InstallStrategy.COPY, cached, "New-2.0.jar");
+
+        // nothing changes before the commit
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "Old-1.0.jar"), list(modsDir));
+
+        transaction.commit();
+
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "New-2.0.jar"), list(modsDir));
+        assertEquals("nested", Files.readString(modsDir.resolve("1.7.10/Nested.jar")));
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "Old-1.0.jar"), list(root.resolve("mods.previous")));
+        assertFalse(Files.exists(root.resolve("mods.staging")));
+    }
+
+    @Test
+    void rollbackSwapsPreviousBack() throws IOException {
+        val transaction = ModsTransaction.begin(modsDir, Set.of(modsDir.resolve("Old-1.0.jar")));
+        transaction.add(InstallStrategy.COPY, cached, "New-2.0.jar");
+        transaction.commit();
+
+        assertTrue(ModsTransaction.rollback(modsDir));
+
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "Old-1.0.jar"), list(modsDir));
+        // rolling back again redoes the update
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "New-2.0.jar"), list(root.resolve("mods.previous")));
+        assertFalse(Files.exists(root.resolve("mods.rollback")));
+    }
+
+    @Test
+    void rollbackWithoutPreviousDoesNothing() throws IOException {
+        assertFalse(ModsTransaction.rollback(modsDir));
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "Old-1.0.jar"), list(modsDir));
+    }
+
+    @Test
+    void inPlaceCommitKeepsDirectory() throws IOException {
+        val directoryKey = Files.readAttributes(modsDir, BasicFileAttributes.class).fileKey();
+        val transaction = ModsTransaction.begin(modsDir, Set.of(modsDir.resolve("Old-1.0.jar")));
+        transaction.add(InstallStrategy.COPY, cached, "New-2.0.jar");
+
+        transaction.commitInPlace();
+
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "New-2.0.jar"), list(modsDir));
+        assertEquals("new", Files.readString(modsDir.resolve("New-2.0.jar")));
+        assertEquals(directoryKey, Files.readAttributes(modsDir, BasicFileAttributes.class).fileKey());
+        assertFalse(Files.exists(root.resolve("mods.staging")));
+        assertFalse(Files.exists(root.resolve("mods.previous")));
+    }
+
+    @Test
+    void abortLeavesModsUntouched() throws IOException {
+        val transaction = ModsTransaction.begin(modsDir, Set.of(modsDir.resolve("Old-1.0.jar")));
+        transaction.add(InstallStrategy.COPY, cached, "New-2.0.jar");
+
+        transaction.abort();
+
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "Old-1.0.jar"), list(modsDir));
+        assertFalse(Files.exists(root.resolve("mods.staging")));
+    }
+
+    @Test
+    void beginRestoresModsMissingAfterInterruptedCommit() throws IOException {
+        // killed after moving mods aside but before moving the staged directory in
+        Files.createDirectories(root.resolve("mods.staging"));
+        Files.move(modsDir, root.resolve("mods.previous"));
+
+        val transaction = ModsTransaction.begin(modsDir, Set.of(modsDir.resolve("Old-1.0.jar")));
+        transaction.add(InstallStrategy.COPY, cached, "New-2.0.jar");
+        transaction.commit();
+
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "New-2.0.jar"), list(modsDir));
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "Old-1.0.jar"), list(root.resolve("mods.previous")));
+    }
+
+    @Test
+    void rollbackRestoresModsMissingAfterInterruptedCommit() throws IOException {
+        Files.move(modsDir, root.resolve("mods.previous"));
+
+        assertTrue(ModsTransaction.rollback(modsDir));
+
+        assertEquals(List.of("1.7.10", "Kept-1.0.jar", "Old-1.0.jar"), list(modsDir));
+        assertFalse(Files.exists(root.resolve("mods.previous")));
+    }
+
+    private static List<String> list(Path directory) throws IOException {
+        try (val paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package GTNHNightlyUpdater;
+
+import GTNHNightlyUpdater.Models.Assets;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotTest {
+    @TempDir
+    Path cacheDir;
+
+    private Updater updater;
+
+    @BeforeEach
+    void setUp() {
+        val options = new Main.Options();
+        options.targetManifest = Main.Options.TargetManifest.DAILY;
+        updater = new Updater(options, cacheDir);
+    }
+
+    @Test
+    void savedSnapshotRestoresTheResolvedAssets() throws IOException {
+        updater.saveSnapshot(assets(500));
+
+        val restored = Updater.readSnapshot(updater.latestSnapshotPath(Main.Options.TargetManifest.DAILY)).toAsset();
+
+        assertEquals(500, restored.getLatestNightly());
+        assertEquals("2.8.0-nightly-500", restored.getConfigTag());
+        val mod = restored.getMod("GT5-Unofficial");
+        assertEquals("BOTH", mod.getSide());
+        assertEquals("5.09.50.01", mod.getLatest().getVersion());
+        assertEquals("GT5-Unofficial-5.09.50.01.jar", mod.getLatest().getFileName());
+        assertEquals("abc123", mod.getLatest().getSha256());
+        assertEquals(Set.of("GT5-Unofficial-5.09.50.00.jar"), mod.getRetiredFileNames());
+    }
+
+    @Test
+    void keepsNumberedSnapshotsOfRecentNightlies() throws IOException {
+        for (int nightly = 1; nightly <= 12; nightly++) {
+            updater.saveSnapshot(assets(nightly));
+        }
+
+        try (val paths = Files.list(cacheDir.resolve("snapshots"))) {
+            val names = paths.map(path -> path.getFileName().toString()).sorted().toList();
+            assertEquals(11, names.size());
+            assertTrue(names.contains("daily.json"));
+            assertTrue(names.contains("daily-3.json"));
+            assertTrue(names.contains("daily-12.json"));
+        }
+        assertEquals(12, Updater.readSnapshot(cacheDir.resolve("snapshots/daily.json")).latestNightly());
+    }
+
+    @Test
+    void missingSnapshotFails() {
+        assertThrows(IOException.class, () -> Updater.readSnapshot(cacheDir.resolve("snapshots/daily.json")));
+    }
+
+    private static Assets.Asset assets(int nightly) {
+        val version = new Assets.Version("5.09.50.01");
+        version.setFileName("GT5-Unofficial-5.09.50.01.jar");
+        version.setDownloadUrl("https://nexus.gtnewhorizons.com/gt-01.jar");
+        version.setSha256("abc123");
+        val mod = new Assets.Mod("GT5-Unofficial", null, new ArrayList<>(List.of(version)));
+        mod.setSide("BOTH");
+        mod.setLatestVersion("5.09.50.01");
+        mod.getRetiredFileNames().add("GT5-Unofficial-5.09.50.00.jar");
+
+        val asset = new Assets.Asset(new ArrayList<>(List.of(mod)), nightly, nightly);
+        asset.setConfigTag("2.8.0-nightly-" + nightly);
+        return asset;
+    }
+}
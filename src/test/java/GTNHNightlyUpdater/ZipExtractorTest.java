@@ -0,0 +1,144 @@
+package GTNHNightlyUpdater;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZipExtractorTest {
+    @TempDir
+    Path root;
+
+    private final ZipExtractor extractor = new ZipExtractor(4);
+
+    @Test
+    void extractsAndRecordsWhatItWrote() throws IOException, InterruptedException {
+        val target = root.resolve("instance");
+        val zip = zip("v1.zip", Map.of("mmc-pack.json", "pack", "patches/a.json", "a"));
+
+        val result = extractor.extract(zip, "pack", target);
+
+        assertEquals(new ZipExtractor.Result(2, 0, 0), result);
+        assertEquals("pack", Files.readString(target.resolve("mmc-pack.json")));
+        assertEquals("a", Files.readString(target.resolve("patches/a.json")));
+        assertTrue(Files.exists(target.resolve(ZipExtractor.MANIFEST_DIR).resolve("pack.json")));
+    }
+
+    @Test
+    void skipsRecordedFilesWithoutReadingThem() throws IOException, InterruptedException {
+        val target = root.resolve("instance");
+        val zip = zip("v1.zip", Map.of("patches/a.json", "aaaa"));
+        extractor.extract(zip, "pack", target);
+
+        // same size and modification time as recorded, so the content isn't looked at
+        val path = target.resolve("patches/a.json");
+        val modified = Files.getLastModifiedTime(path);
+        Files.writeString(path, "bbbb");
+        Files.setLastModifiedTime(path, modified);
+
+        val result = extractor.extract(zip, "pack", target);
+
+        assertEquals(new ZipExtractor.Result(0, 1, 0), result);
+        assertEquals("bbbb", Files.readString(path));
+    }
+
+    @Test
+    void comparesCrcOfTouchedFiles() throws IOException, InterruptedException {
+        val target = root.resolve("instance");
+        val zip = zip("v1.zip", Map.of("patches/a.json", "aaaa", "patches/b.json", "bbbb"));
+        extractor.extract(zip, "pack", target);
+        Files.writeString(target.resolve("patches/a.json"), "cccc");
+        val untouched = target.resolve("patches/b.json");
+        Files.setLastModifiedTime(untouched, FileTime.fromMillis(Files.getLastModifiedTime(untouched).toMillis() - 60_000));
+
+        val result = extractor.extract(zip, "pack", target);
+
+        assertEquals(new ZipExtractor.Result(1, 1, 0), result);
+        assertEquals("aaaa", Files.readString(target.resolve("patches/a.json")));
+    }
+
+    @Test
+    void removesFilesTheNewVersionDropped() throws IOException, InterruptedException {
+        val target = root.resolve("instance");
+        extractor.extract(zip("v1.zip", Map.of("mmc-pack.json", "pack", "libraries/old/old.jar", "old")), "pack", target);
+        Files.writeString(target.resolve("libraries/mine.jar"), "mine");
+
+        val result = extractor.extract(zip("v2.zip", Map.of("mmc-pack.json", "pack")), "pack", target);
+
+        assertEquals(new ZipExtractor.Result(0, 1, 1), result);
+        assertFalse(Files.exists(target.resolve("libraries/old")));
+        // never extracted, so never removed
+        assertEquals("mine", Files.readString(target.resolve("libraries/mine.jar")));
+    }
+
+    @Test
+    void firstRunClearsTheArchiveDirectories() throws IOException, InterruptedException {
+        // extracted by a version that didn't record anything
+        val target = root.resolve("instance");
+        Files.createDirectories(target.resolve("libraries/old"));
+        Files.writeString(target.resolve("libraries/old/old.jar"), "old");
+        Files.writeString(target.resolve("instance.cfg"), "mine");
+        val entries = new LinkedHashMap<String, String>();
+        entries.put("libraries/", "");
+        entries.put("libraries/new.jar", "new");
+        entries.put("mmc-pack.json", "pack");
+
+        val result = extractor.extract(zip("v1.zip", entries), "pack", target);
+
+        assertEquals(new ZipExtractor.Result(2, 0, 1), result);
+        assertFalse(Files.exists(target.resolve("libraries/old")));
+        assertEquals("new", Files.readString(target.resolve("libraries/new.jar")));
+        // outside the archive's directories, so left alone
+        assertEquals("mine", Files.readString(target.resolve("instance.cfg")));
+    }
+
+    @Test
+    void writesManyEntriesInParallel() throws IOException, InterruptedException {
+        val target = root.resolve("instance");
+        val entries = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 200; i++) {
+            entries.put(String.format("libraries/%d/lib-%d.jar", i % 10, i), "content " + i);
+        }
+
+        val result = new ZipExtractor(16).extract(zip("many.zip", entries), "pack", target);
+
+        assertEquals(200, result.written());
+        for (val entry : entries.entrySet()) {
+            assertEquals(entry.getValue(), Files.readString(target.resolve(entry.getKey())));
+        }
+    }
+
+    @Test
+    void refusesEntriesOutsideTheTarget() throws IOException {
+        val zip = zip("evil.zip", Map.of("../evil.txt", "evil"));
+
+        assertThrows(IOException.class, () -> extractor.extract(zip, "pack", root.resolve("instance")));
+        assertFalse(Files.exists(root.resolve("evil.txt")));
+    }
+
+    private Path zip(String name, Map<String, String> entries) throws IOException {
+        val path = root.resolve(name);
+        try (val out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (val entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
+}